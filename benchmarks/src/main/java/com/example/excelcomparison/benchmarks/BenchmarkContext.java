@@ -0,0 +1,45 @@
+package com.example.excelcomparison.benchmarks;
+
+import com.example.excelcomparison.service.ComparisonService;
+import com.example.excelcomparison.service.ExcelService;
+import com.example.excelcomparison.service.ParallelComparisonEngine;
+import com.example.excelcomparison.service.PipelineMetrics;
+import com.example.excelcomparison.service.StreamingXlsxReader;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Minimal Spring context holding only the services under test, wired the same way
+ * as in the application. Properties use the usual {@code key=value} form.
+ */
+final class BenchmarkContext {
+
+    private BenchmarkContext() {
+    }
+
+    static ConfigurableApplicationContext start(String... properties) {
+        return new SpringApplicationBuilder(Services.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .logStartupInfo(false)
+                .properties(properties)
+                .run();
+    }
+
+    @Configuration
+    @Import({ExcelService.class, StreamingXlsxReader.class, ComparisonService.class, ParallelComparisonEngine.class,
+            PipelineMetrics.class})
+    static class Services {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+}
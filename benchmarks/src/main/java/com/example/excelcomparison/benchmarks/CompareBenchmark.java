@@ -0,0 +1,61 @@
+package com.example.excelcomparison.benchmarks;
+
+import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.model.JoinMode;
+import com.example.excelcomparison.service.ComparisonService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Comparing two parsed sheets on their key column. With {@code multiValuedShare}
+ * of 0 the comparison takes the distinct-value strategy; any comma-separated cell
+ * switches it to the full-row strategy.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompareBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"0.1", "1.0"})
+    public double cardinality;
+
+    @Param({"0.0", "0.1"})
+    public double multiValuedShare;
+
+    @Param({"DISTINCT_KEYS", "ALL_ROWS"})
+    public JoinMode joinMode;
+
+    private ConfigurableApplicationContext context;
+    private ComparisonService comparisonService;
+    private ExcelData file1;
+    private ExcelData file2;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        comparisonService = context.getBean(ComparisonService.class);
+        file1 = new ExcelData("left.xlsx", SyntheticData.table(rows, cardinality, multiValuedShare, 1),
+                Collections.singletonList("Left"), "Left");
+        file2 = new ExcelData("right.xlsx", SyntheticData.table(rows, cardinality, multiValuedShare, 2),
+                Collections.singletonList("Right"), "Right");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ComparisonService.ComparisonResult compareColumns() {
+        return comparisonService.compareColumns(file1, file2, "Id", "Id", joinMode);
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.excelcomparison.benchmarks;
+
+import com.example.excelcomparison.model.SheetTable;
+import com.example.excelcomparison.service.ExcelService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing a result workbook, either streamed to an output stream as
+ * {@code /api/download} does or collected into a byte array.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExportBenchmark {
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private ExcelService excelService;
+    private SheetTable result;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkContext.start();
+        excelService = context.getBean(ExcelService.class);
+        result = SyntheticData.table(rows, 1.0, 0.0, 3);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void streamToOutput() throws IOException {
+        excelService.writeComparisonResult(result, null, OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public byte[] toByteArray() throws IOException {
+        return excelService.createComparisonResult(result, null);
+    }
+}
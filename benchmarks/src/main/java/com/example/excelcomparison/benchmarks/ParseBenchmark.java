@@ -0,0 +1,73 @@
+package com.example.excelcomparison.benchmarks;
+
+import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.service.ExcelService;
+import com.example.excelcomparison.service.ParsedWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing one sheet of an uploaded workbook, through either the usermodel reader
+ * or the streaming SAX reader, in full or projected to the key column. Key
+ * cardinality sets how many distinct strings the shared-strings table and the
+ * dictionary hold.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"0.1", "1.0"})
+    public double cardinality;
+
+    @Param({"0.0", "0.1"})
+    public double multiValuedShare;
+
+    @Param({"1", "4"})
+    public int sheets;
+
+    @Param({"usermodel", "streaming"})
+    public String reader;
+
+    private ConfigurableApplicationContext context;
+    private ExcelService excelService;
+    private byte[] workbook;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // The reader is chosen by size, so force it through the threshold
+        String threshold = reader.equals("streaming") ? "0B" : "1TB";
+        context = BenchmarkContext.start("excel.streaming.threshold=" + threshold);
+        excelService = context.getBean(ExcelService.class);
+        workbook = SyntheticData.workbook(rows, sheets, cardinality, multiValuedShare, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /** Parses the last sheet, so multi-sheet workbooks pay for skipping the others. */
+    @Benchmark
+    public ExcelData parseSheet() throws IOException {
+        return excelService.parseExcelFile(workbook, sheets - 1, "benchmark.xlsx");
+    }
+
+    /** Reads only the key column, as a comparison does. */
+    @Benchmark
+    public ExcelData parseKeyColumn() throws IOException {
+        try (ParsedWorkbook parsed = excelService.openWorkbook(workbook, "benchmark.xlsx")) {
+            return parsed.parseSheet(sheets - 1, Collections.singleton(SyntheticData.HEADERS.get(0)));
+        }
+    }
+}
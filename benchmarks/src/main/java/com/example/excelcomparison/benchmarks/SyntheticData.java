@@ -0,0 +1,93 @@
+package com.example.excelcomparison.benchmarks;
+
+import com.example.excelcomparison.model.SheetTable;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates comparison inputs with a controlled shape. Every row has an {@code Id}
+ * key column followed by three payload columns.
+ *
+ * <ul>
+ *   <li>{@code cardinality} is the share of distinct keys: 1.0 makes keys mostly
+ *   unique, 0.01 repeats each key about a hundred times.</li>
+ *   <li>{@code multiValuedShare} is the share of key cells holding two
+ *   comma-separated keys, which switches the comparison to full-row mode.</li>
+ * </ul>
+ *
+ * The same seed always produces the same data.
+ */
+final class SyntheticData {
+
+    static final List<String> HEADERS = Arrays.asList("Id", "Name", "City", "Amount");
+
+    private SyntheticData() {
+    }
+
+    static SheetTable table(int rows, double cardinality, double multiValuedShare, long seed) {
+        Random random = new Random(seed);
+        int keySpace = keySpace(rows, cardinality);
+        SheetTable.Builder builder = SheetTable.builder(HEADERS);
+        for (int i = 0; i < rows; i++) {
+            builder.addRow(row(random, i, keySpace, multiValuedShare));
+        }
+        return builder.build();
+    }
+
+    /**
+     * An .xlsx workbook with {@code sheets} sheets of {@code rows} rows each. Cells
+     * are written as strings, matching what the parser reads back.
+     */
+    static byte[] workbook(int rows, int sheets, double cardinality, double multiValuedShare, long seed)
+            throws IOException {
+        Random random = new Random(seed);
+        int keySpace = keySpace(rows, cardinality);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(100);
+        workbook.setCompressTempFiles(true);
+        try {
+            for (int s = 0; s < sheets; s++) {
+                Sheet sheet = workbook.createSheet("Sheet" + (s + 1));
+                writeRow(sheet.createRow(0), HEADERS.toArray(new String[0]));
+                for (int i = 0; i < rows; i++) {
+                    writeRow(sheet.createRow(i + 1), row(random, i, keySpace, multiValuedShare));
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            workbook.write(out);
+            return out.toByteArray();
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private static int keySpace(int rows, double cardinality) {
+        return Math.max(1, (int) (rows * cardinality));
+    }
+
+    private static String[] row(Random random, int index, int keySpace, double multiValuedShare) {
+        String key = "K" + random.nextInt(keySpace);
+        if (random.nextDouble() < multiValuedShare) {
+            key = key + ", K" + random.nextInt(keySpace);
+        }
+        return new String[]{
+                key,
+                "Name " + index,
+                "City" + random.nextInt(100),
+                String.valueOf(random.nextInt(1_000_000) / 100.0)
+        };
+    }
+
+    private static void writeRow(Row row, String[] values) {
+        for (int j = 0; j < values.length; j++) {
+            row.createCell(j).setCellValue(values[j]);
+        }
+    }
+}
@@ -1,9 +1,21 @@
 package com.example.excelcomparison.controller;
 
+import com.example.excelcomparison.model.ComparisonJob;
 import com.example.excelcomparison.model.ComparisonRequest;
+import com.example.excelcomparison.model.ComparisonRows;
 import com.example.excelcomparison.model.ExcelData;
-import com.example.excelcomparison.service.ComparisonService;
+import com.example.excelcomparison.model.RowSource;
+import com.example.excelcomparison.model.SpilledContent;
+import com.example.excelcomparison.model.UploadedFile;
+import com.example.excelcomparison.service.ChunkedUploadService;
+import com.example.excelcomparison.service.ComparisonJobService;
 import com.example.excelcomparison.service.ExcelService;
+import com.example.excelcomparison.service.ResultQueryService;
+import com.example.excelcomparison.service.StorageService;
+import com.example.excelcomparison.service.UploadSpillStore;
+import com.example.excelcomparison.service.WorkbookSessionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -11,29 +23,48 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api")
 @CrossOrigin(origins = "*")
 public class ExcelComparisonController {
 
+    private static final Logger log = LoggerFactory.getLogger(ExcelComparisonController.class);
+
     @Autowired
     private ExcelService excelService;
 
     @Autowired
-    private ComparisonService comparisonService;
+    private ComparisonJobService comparisonJobService;
+
+    @Autowired
+    private WorkbookSessionService workbookSessionService;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private UploadSpillStore uploadSpillStore;
+
+    @Autowired
+    private ChunkedUploadService chunkedUploadService;
 
-    private final Map<String, ExcelData> fileStorage = new ConcurrentHashMap<>();
-    private final Map<String, byte[]> originalFileContents = new ConcurrentHashMap<>();
-    private final Map<String, String> originalFileNames = new ConcurrentHashMap<>();
+    @Autowired
+    private ResultQueryService resultQueryService;
 
     @PostMapping("/upload")
     public ResponseEntity<Map<String, Object>> uploadFile(@RequestParam("file") MultipartFile file) {
@@ -52,27 +83,120 @@ public class ExcelComparisonController {
                 return ResponseEntity.badRequest().body(response);
             }
 
-            // Get sheet names first
-            List<String> sheetNames = excelService.getSheetNames(file);
-            
-            // Parse first sheet by default
-            ExcelData excelData = excelService.parseExcelFile(file, 0);
-            String fileId = UUID.randomUUID().toString();
-            fileStorage.put(fileId, excelData);
-            originalFileContents.put(fileId, file.getBytes());
-            originalFileNames.put(fileId, file.getOriginalFilename());
+            // Spill the raw bytes to disk, then open the workbook once from there
+            SpilledContent content = uploadSpillStore.spill(file);
+            return ResponseEntity.ok(openUpload(file.getOriginalFilename(), content));
 
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("message", "Error processing file: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * Starts a chunked upload for files above the multipart limit. Chunks are then
+     * PUT as raw bytes to {@code /api/uploads/{uploadId}?offset=n}.
+     */
+    @PostMapping("/uploads")
+    public ResponseEntity<Map<String, Object>> startChunkedUpload(@RequestParam("fileName") String fileName,
+                                                                  @RequestParam("size") long size) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (!fileName.endsWith(".xlsx") && !fileName.endsWith(".xls")) {
+            response.put("success", false);
+            response.put("message", "Please upload an Excel file (.xlsx or .xls)");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (size > chunkedUploadService.getMaxSize()) {
+            response.put("success", false);
+            response.put("message", "File size exceeds maximum limit (" + chunkedUploadService.getMaxSize() + " bytes)");
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(response);
+        }
+
+        try {
+            ChunkedUploadService.StagedUpload upload = chunkedUploadService.start(fileName, size);
             response.put("success", true);
-            response.put("message", "File uploaded successfully");
-            response.put("fileId", fileId);
-            response.put("fileName", excelData.getFileName());
-            response.put("headers", excelData.getHeaders());
-            response.put("sheetNames", sheetNames);
-            response.put("selectedSheet", excelData.getSelectedSheet());
-            response.put("hasMultipleSheets", sheetNames.size() > 1);
+            putUploadStatus(response, upload);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("message", "Error starting upload: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
+
+    /**
+     * Where a chunked upload stands; {@code received} is the offset to resume from.
+     */
+    @GetMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> getChunkedUpload(@PathVariable String uploadId) {
+        Map<String, Object> response = new HashMap<>();
+        ChunkedUploadService.StagedUpload upload = chunkedUploadService.get(uploadId);
 
+        if (upload == null) {
+            response.put("success", false);
+            response.put("message", "Upload not found or expired");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+
+        response.put("success", true);
+        putUploadStatus(response, upload);
+        return ResponseEntity.ok(response);
+    }
+
+    @PutMapping(value = "/uploads/{uploadId}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<Map<String, Object>> uploadChunk(@PathVariable String uploadId,
+                                                           @RequestParam("offset") long offset,
+                                                           HttpServletRequest request) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            // The body is streamed into the staging file, never buffered whole
+            long received = chunkedUploadService.append(uploadId, offset, request.getInputStream());
+            response.put("success", true);
+            response.put("received", received);
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (IllegalStateException e) {
+            ChunkedUploadService.StagedUpload upload = chunkedUploadService.get(uploadId);
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            response.put("received", upload != null ? upload.getReceived() : 0);
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+        } catch (IOException e) {
+            response.put("success", false);
+            response.put("message", "Error receiving chunk: " + e.getMessage());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+        }
+    }
 
+    /**
+     * Finishes a chunked upload and opens the staged workbook; the response is the
+     * same as {@code /api/upload}.
+     */
+    @PostMapping("/uploads/{uploadId}/complete")
+    public ResponseEntity<Map<String, Object>> completeChunkedUpload(@PathVariable String uploadId) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            ChunkedUploadService.CompletedUpload upload = chunkedUploadService.complete(uploadId);
+            return ResponseEntity.ok(openUpload(upload.getFileName(), upload.getContent()));
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        } catch (IllegalStateException e) {
+            response.put("success", false);
+            response.put("message", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(response);
         } catch (IOException e) {
             response.put("success", false);
             response.put("message", "Error processing file: " + e.getMessage());
@@ -80,63 +204,68 @@ public class ExcelComparisonController {
         }
     }
 
+    @DeleteMapping("/uploads/{uploadId}")
+    public ResponseEntity<Map<String, Object>> abortChunkedUpload(@PathVariable String uploadId) throws IOException {
+        Map<String, Object> response = new HashMap<>();
+        boolean aborted = chunkedUploadService.abort(uploadId);
+        response.put("success", aborted);
+        response.put("message", aborted ? "Upload discarded" : "Upload not found or expired");
+        return aborted ? ResponseEntity.ok(response) : ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+    }
+
     @PostMapping("/select-sheet")
     public ResponseEntity<Map<String, Object>> selectSheet(@RequestParam("fileId") String fileId, 
                                                           @RequestParam("sheetIndex") int sheetIndex) {
         Map<String, Object> response = new HashMap<>();
         
-        System.out.println("Sheet selection request: fileId=" + fileId + ", sheetIndex=" + sheetIndex);
+        log.debug("Sheet selection request: fileId={}, sheetIndex={}", fileId, sheetIndex);
         
         try {
-            ExcelData currentData = fileStorage.get(fileId);
-            if (currentData == null) {
-                System.out.println("File not found: " + fileId);
+            UploadedFile uploadedFile = storageService.get(fileId, UploadedFile.class);
+            if (uploadedFile == null) {
+                log.debug("File not found: {}", fileId);
                 response.put("success", false);
                 response.put("message", "File not found");
                 return ResponseEntity.badRequest().body(response);
             }
 
             // Get the original file data to re-parse with selected sheet
-            byte[] originalFileContent = originalFileContents.get(fileId);
+            SpilledContent originalFileContent = uploadedFile.getContent();
             if (originalFileContent == null) {
-                System.out.println("Original file content not found: " + fileId);
+                log.debug("Original file content not found: {}", fileId);
                 response.put("success", false);
                 response.put("message", "Original file content not found");
                 return ResponseEntity.badRequest().body(response);
             }
             
-            List<String> sheetNames = excelService.getSheetNames(originalFileContent);
-            System.out.println("Available sheets: " + sheetNames);
+            // Reuse the workbook opened at upload; reopen only if the session is gone
+            String originalFileName = uploadedFile.getFileName();
+            if (workbookSessionService.get(fileId) == null) {
+                workbookSessionService.open(fileId, originalFileContent, originalFileName);
+            }
+            List<String> sheetNames = workbookSessionService.getSheetNames(fileId);
             
             if (sheetIndex >= 0 && sheetIndex < sheetNames.size()) {
-                // Re-parse the Excel file with the selected sheet index
-                String originalFileName = originalFileNames.get(fileId);
-                System.out.println("Re-parsing file: " + originalFileName + " with sheet index: " + sheetIndex);
-                ExcelData newExcelData = excelService.parseExcelFile(originalFileContent, sheetIndex, originalFileName);
-                
-                System.out.println("Parsed new sheet: " + newExcelData.getSelectedSheet());
-                System.out.println("New headers: " + newExcelData.getHeaders());
+                // Sheets already selected once are served from the sheet cache
+                ExcelData newExcelData = workbookSessionService.selectSheet(fileId, sheetIndex);
+                log.debug("Selected sheet {} of {}", newExcelData.getSelectedSheet(), originalFileName);
                 
-                // Update the stored data with the new sheet information
-                currentData.setSheetNames(newExcelData.getSheetNames());
-                currentData.setSelectedSheet(newExcelData.getSelectedSheet());
-                currentData.setHeaders(newExcelData.getHeaders());
-                currentData.setRows(newExcelData.getRows());
+                // Point the upload at the new sheet and re-weigh it in storage
+                uploadedFile.setData(newExcelData);
+                storeUpload(fileId, uploadedFile);
                 
                 response.put("success", true);
                 response.put("message", "Sheet selected successfully");
                 response.put("selectedSheet", newExcelData.getSelectedSheet());
                 response.put("headers", newExcelData.getHeaders());
-                
-                System.out.println("Response prepared: " + response);
+                response.put("rowCount", newExcelData.getTable().getRowCount());
             } else {
-                System.out.println("Invalid sheet index: " + sheetIndex + ", available: 0-" + (sheetNames.size() - 1));
+                log.debug("Invalid sheet index: {}, available: 0-{}", sheetIndex, sheetNames.size() - 1);
                 response.put("success", false);
                 response.put("message", "Invalid sheet index");
             }
         } catch (Exception e) {
-            System.out.println("Error in sheet selection: " + e.getMessage());
-            e.printStackTrace();
+            log.error("Error in sheet selection for file {}", fileId, e);
             response.put("success", false);
             response.put("message", "Error selecting sheet: " + e.getMessage());
         }
@@ -156,34 +285,18 @@ public class ExcelComparisonController {
                 return ResponseEntity.badRequest().body(response);
             }
 
-            ExcelData file1 = fileStorage.get(request.getFile1Id());
-            ExcelData file2 = fileStorage.get(request.getFile2Id());
-
-            if (file1 == null || file2 == null) {
-                response.put("success", false);
-                response.put("message", "One or both files not found. Please upload files again.");
-                return ResponseEntity.badRequest().body(response);
-            }
-
-            ComparisonService.ComparisonResult result = comparisonService.compareColumns(
-                file1, file2, request.getColumn1(), request.getColumn2()
-            );
-
-            String resultId = UUID.randomUUID().toString();
-            fileStorage.put(resultId + "_matched", new ExcelData("matched", file1.getHeaders(), result.getMatchedRows()));
-            fileStorage.put(resultId + "_mismatched", new ExcelData("mismatched", file1.getHeaders(), result.getMismatchedRows()));
+            ComparisonJob job = comparisonJobService.runNow(request);
 
             response.put("success", true);
             response.put("message", "Comparison completed successfully");
-            response.put("resultId", resultId);
-            response.put("matchedCount", result.getMatchedRows().size());
-            response.put("mismatchedCount", result.getMismatchedRows().size());
-            
-            // Include the actual result data for immediate display
-            response.put("matchedRows", result.getMatchedRows());
-            response.put("mismatchedRows", result.getMismatchedRows());
-            
-            System.out.println("Comparison response: " + response);
+            response.put("resultId", job.getResultId());
+            response.put("matchedCount", job.getMatchedCount());
+            response.put("mismatchedCount", job.getMismatchedCount());
+            response.put("cached", job.isCached());
+            if (job.getColumnChanges() != null) {
+                response.put("columnChanges", job.getColumnChanges());
+            }
+            putFirstPages(response, job.getResultId());
 
             return ResponseEntity.ok(response);
 
@@ -191,6 +304,10 @@ public class ExcelComparisonController {
             response.put("success", false);
             response.put("message", e.getMessage());
             return ResponseEntity.badRequest().body(response);
+        } catch (RejectedExecutionException e) {
+            response.put("success", false);
+            response.put("message", "Too many comparisons are queued. Please try again shortly.");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
         } catch (Exception e) {
             response.put("success", false);
             response.put("message", "Error during comparison: " + e.getMessage());
@@ -198,87 +315,313 @@ public class ExcelComparisonController {
         }
     }
 
-    @GetMapping("/download/{resultId}/{type}")
-    public ResponseEntity<byte[]> downloadResult(@PathVariable String resultId, @PathVariable String type) {
+    @PostMapping("/jobs")
+    public ResponseEntity<Map<String, Object>> submitJob(@RequestBody ComparisonRequest request) {
+        Map<String, Object> response = new HashMap<>();
+
+        if (request == null || !request.isValid()) {
+            response.put("success", false);
+            response.put("message", "Invalid comparison request. All fields are required.");
+            return ResponseEntity.badRequest().body(response);
+        }
+
         try {
-            String key = resultId + "_" + type;
-            ExcelData resultData = fileStorage.get(key);
+            ComparisonJob job = comparisonJobService.submit(request);
+            response.put("success", true);
+            response.put("jobId", job.getJobId());
+            response.put("status", job.getStatus());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(response);
+        } catch (RejectedExecutionException e) {
+            response.put("success", false);
+            response.put("message", "Too many comparisons are queued. Please try again shortly.");
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(response);
+        }
+    }
 
-            if (resultData == null) {
-                return ResponseEntity.notFound().build();
-            }
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJobStatus(@PathVariable String jobId) {
+        Map<String, Object> response = new HashMap<>();
+        ComparisonJob job = comparisonJobService.get(jobId);
 
-            byte[] excelBytes = excelService.createComparisonResult(
-                type.equals("matched") ? resultData.getRows() : new ArrayList<>(),
-                type.equals("mismatched") ? resultData.getRows() : new ArrayList<>()
-            );
+        if (job == null) {
+            response.put("success", false);
+            response.put("message", "Job not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
 
-            String filename = type.equals("matched") ? "matched_rows.xlsx" : "mismatched_rows.xlsx";
+        response.put("success", true);
+        response.put("jobId", job.getJobId());
+        response.put("status", job.getStatus());
+        response.put("phase", job.getPhase());
+        response.put("rowsProcessed", job.getRowsProcessed());
+        response.put("message", job.getMessage());
+        if (job.getStatus() == ComparisonJob.Status.COMPLETED) {
+            response.put("resultId", job.getResultId());
+            response.put("matchedCount", job.getMatchedCount());
+            response.put("mismatchedCount", job.getMismatchedCount());
+            response.put("cached", job.isCached());
+            if (job.getColumnChanges() != null) {
+                response.put("columnChanges", job.getColumnChanges());
+            }
+            putFirstPages(response, job.getResultId());
+        }
 
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
-            headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(excelBytes.length);
+        return ResponseEntity.ok(response);
+    }
 
-            return ResponseEntity.ok()
-                    .headers(headers)
-                    .body(excelBytes);
+    @DeleteMapping("/jobs/{jobId}")
+    public ResponseEntity<Map<String, Object>> cancelJob(@PathVariable String jobId) {
+        Map<String, Object> response = new HashMap<>();
+        boolean cancelled = comparisonJobService.cancel(jobId);
+        response.put("success", cancelled);
+        response.put("message", cancelled ? "Comparison cancelled" : "Job not found or already finished");
+        return cancelled ? ResponseEntity.ok(response) : ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
 
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    @GetMapping("/download/{resultId}/{type}")
+    public ResponseEntity<StreamingResponseBody> downloadResult(@PathVariable String resultId, @PathVariable String type) {
+        String key = resultId + "_" + type;
+        ComparisonRows resultRows = storageService.get(key, ComparisonRows.class);
+
+        if (resultRows == null) {
+            return ResponseEntity.notFound().build();
         }
+
+        ComparisonRows matched = type.equals("matched") ? resultRows : null;
+        ComparisonRows mismatched = type.equals("mismatched") ? resultRows : null;
+        String filename = type.equals("matched") ? "matched_rows.xlsx" : "mismatched_rows.xlsx";
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_OCTET_STREAM);
+        headers.setContentDispositionFormData("attachment", filename);
+
+        // Written straight to the response as the workbook is generated
+        StreamingResponseBody body = out -> excelService.writeComparisonResult(matched, mismatched, out);
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
     }
 
     @GetMapping("/files/{fileId}")
-    public ResponseEntity<Map<String, Object>> getFileInfo(@PathVariable String fileId) {
+    public ResponseEntity<Map<String, Object>> getFileInfo(@PathVariable String fileId,
+                                                           @RequestParam(defaultValue = "0") int offset,
+                                                           @RequestParam(required = false) Integer limit)
+            throws IOException {
         Map<String, Object> response = new HashMap<>();
-        ExcelData excelData = fileStorage.get(fileId);
+        // Accepts both upload ids and stored result keys, named after their type
+        ExcelData excelData = getUploadedData(fileId);
+        RowSource table = excelData != null ? excelData.getTable() : storageService.get(fileId, ComparisonRows.class);
 
-        if (excelData == null) {
+        if (table == null) {
             response.put("success", false);
             response.put("message", "File not found");
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
         }
 
+        ResultQueryService.RowPage page = resultQueryService.page(table, offset, limit, null, false, null);
         response.put("success", true);
-        response.put("fileName", excelData.getFileName());
-        response.put("headers", excelData.getHeaders());
-        response.put("rows", excelData.getRows());
+        response.put("fileName", excelData != null ? excelData.getFileName() : fileId.substring(fileId.lastIndexOf('_') + 1));
+        response.put("headers", excelData != null ? excelData.getHeaders() : table.getHeaders());
+        response.put("rows", page.getRows());
+        response.put("offset", page.getOffset());
+        response.put("limit", page.getLimit());
+        response.put("totalRows", page.getTotalRows());
 
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/results/{resultId}/{type}")
+    public ResponseEntity<Map<String, Object>> getResultPage(@PathVariable String resultId,
+                                                             @PathVariable String type,
+                                                             @RequestParam(defaultValue = "0") int offset,
+                                                             @RequestParam(required = false) Integer limit,
+                                                             @RequestParam(required = false) String sort,
+                                                             @RequestParam(defaultValue = "asc") String order,
+                                                             @RequestParam(required = false) String filter) {
+        return resultPage(resultId, type, offset, limit, sort, order, filter);
+    }
+
+    @GetMapping("/results/{resultId}/{type}/csv")
+    public ResponseEntity<StreamingResponseBody> exportResultCsv(@PathVariable String resultId,
+                                                                 @PathVariable String type,
+                                                                 @RequestParam(required = false) String sort,
+                                                                 @RequestParam(defaultValue = "asc") String order,
+                                                                 @RequestParam(required = false) String filter) {
+        ComparisonRows table = storageService.get(resultId + "_" + type, ComparisonRows.class);
+        if (table == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        int[] rows = resultQueryService.select(resultId + "_" + type, table, sort, "desc".equalsIgnoreCase(order),
+                filter);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(new MediaType("text", "csv", StandardCharsets.UTF_8));
+        headers.setContentDispositionFormData("attachment", type + "_results.csv");
+
+        StreamingResponseBody body = out -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            writeCsvLine(writer, table.getHeaders());
+            int count = rows != null ? rows.length : table.getRowCount();
+            List<String> values = new ArrayList<>(table.getColumnCount());
+            for (int i = 0; i < count; i++) {
+                int row = rows != null ? rows[i] : i;
+                values.clear();
+                for (int j = 0; j < table.getColumnCount(); j++) {
+                    values.add(table.getValue(j, row));
+                }
+                writeCsvLine(writer, values);
+            }
+            writer.flush();
+        };
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(body);
+    }
+
     @PostMapping("/get-results")
     public ResponseEntity<Map<String, Object>> getComparisonResults(@RequestBody Map<String, String> request) {
-        Map<String, Object> response = new HashMap<>();
-        
+        String resultId = request.get("resultId");
+        String type = request.get("type");
+
+        if (resultId == null || type == null) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Result ID and type are required");
+            return ResponseEntity.badRequest().body(response);
+        }
+
+        int offset;
+        Integer limit;
         try {
-            String resultId = request.get("resultId");
-            String type = request.get("type");
-            
-            if (resultId == null || type == null) {
-                response.put("success", false);
-                response.put("message", "Result ID and type are required");
-                return ResponseEntity.badRequest().body(response);
+            offset = request.get("offset") != null ? Integer.parseInt(request.get("offset")) : 0;
+            limit = request.get("limit") != null ? Integer.valueOf(request.get("limit")) : null;
+        } catch (NumberFormatException e) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", "Offset and limit must be whole numbers");
+            return ResponseEntity.badRequest().body(response);
+        }
+        if (offset < 0 || (limit != null && limit <= 0)) {
+            Map<String, Object> response = new HashMap<>();
+            response.put("success", false);
+            response.put("message", offset < 0 ? "Offset must not be negative" : "Limit must be positive");
+            return ResponseEntity.badRequest().body(response);
+        }
+        return resultPage(resultId, type, offset, limit, request.get("sort"), request.get("order"), request.get("filter"));
+    }
+
+    private ResponseEntity<Map<String, Object>> resultPage(String resultId, String type, int offset, Integer limit,
+                                                           String sort, String order, String filter) {
+        Map<String, Object> response = new HashMap<>();
+        ComparisonRows resultRows = storageService.get(resultId + "_" + type, ComparisonRows.class);
+
+        if (resultRows == null) {
+            response.put("success", false);
+            response.put("message", "Results not found");
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
+        }
+
+        ResultQueryService.RowPage page = resultQueryService.page(resultId + "_" + type, resultRows, offset, limit,
+                sort, "desc".equalsIgnoreCase(order), filter);
+        response.put("success", true);
+        response.put("headers", page.getHeaders());
+        response.put("rows", page.getRows());
+        response.put("offset", page.getOffset());
+        response.put("limit", page.getLimit());
+        response.put("totalRows", page.getTotalRows());
+        response.put("totalCount", resultRows.getRowCount());
+
+        return ResponseEntity.ok(response);
+    }
+
+    private static void writeCsvLine(Writer writer, List<String> values) throws IOException {
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                writer.write(',');
             }
+            writer.write('"');
+            writer.write(values.get(i).replace("\"", "\"\""));
+            writer.write('"');
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * Opens spilled upload bytes as a new upload. Sheet listing and parsing share
+     * one session, and a repeat upload of the same bytes reuses both the spilled
+     * file and the parsed sheets.
+     */
+    private Map<String, Object> openUpload(String fileName, SpilledContent content) throws IOException {
+        String fileId = UUID.randomUUID().toString();
+        ExcelData excelData;
+        List<String> sheetNames;
+        try {
+            workbookSessionService.open(fileId, content, fileName);
+            sheetNames = workbookSessionService.getSheetNames(fileId);
             
-            String key = resultId + "_" + type;
-            ExcelData resultData = fileStorage.get(key);
+            // Select the first sheet by default; only its headers and row count are
+            // read until a comparison asks for columns
+            excelData = workbookSessionService.selectSheet(fileId, 0);
+        } catch (IOException | RuntimeException e) {
+            workbookSessionService.close(fileId);
+            uploadSpillStore.release(content);
+            throw e;
+        }
+        UploadedFile uploadedFile = new UploadedFile(fileName, content, excelData);
+        storeUpload(fileId, uploadedFile);
 
-            if (resultData == null) {
-                response.put("success", false);
-                response.put("message", "Results not found");
-                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(response);
-            }
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", true);
+        response.put("message", "File uploaded successfully");
+        response.put("fileId", fileId);
+        response.put("fileName", excelData.getFileName());
+        response.put("headers", excelData.getHeaders());
+        response.put("rowCount", excelData.getTable().getRowCount());
+        response.put("sheetNames", sheetNames);
+        response.put("selectedSheet", excelData.getSelectedSheet());
+        response.put("hasMultipleSheets", sheetNames.size() > 1);
+        return response;
+    }
 
-            response.put("success", true);
-            response.put("rows", resultData.getRows());
+    private static void putUploadStatus(Map<String, Object> response, ChunkedUploadService.StagedUpload upload) {
+        response.put("uploadId", upload.getUploadId());
+        response.put("fileName", upload.getFileName());
+        response.put("size", upload.getSize());
+        response.put("received", upload.getReceived());
+    }
 
-            return ResponseEntity.ok(response);
-        } catch (Exception e) {
-            response.put("success", false);
-            response.put("message", "Error retrieving results: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+    private void storeUpload(String fileId, UploadedFile uploadedFile) {
+        // Every upload pays for the workbook it holds open, even one shared with an
+        // identical upload: evicting either alone leaves the other holding it
+        long weight = uploadedFile.estimatedBytes() + workbookSessionService.estimatedBytes(fileId);
+        storageService.put(fileId, uploadedFile, weight);
+    }
+
+    /**
+     * The selected sheet of an upload with every column loaded, for browsing.
+     */
+    private ExcelData getUploadedData(String fileId) throws IOException {
+        UploadedFile uploadedFile = storageService.get(fileId, UploadedFile.class);
+        if (uploadedFile == null || uploadedFile.getData() == null) {
+            return null;
+        }
+        ExcelData selected = uploadedFile.getData();
+        if (selected.hasAllColumns() || workbookSessionService.get(fileId) == null) {
+            return selected;
         }
+        return workbookSessionService.getSheet(fileId, selected.getSheetNames().indexOf(selected.getSelectedSheet()));
+    }
+
+    // Only the first page of each side; further pages come from /api/results
+    private void putFirstPages(Map<String, Object> response, String resultId) {
+        ComparisonRows matched = storageService.get(resultId + "_matched", ComparisonRows.class);
+        ComparisonRows mismatched = storageService.get(resultId + "_mismatched", ComparisonRows.class);
+        ResultQueryService.RowPage matchedPage = resultQueryService.firstPage(matched);
+        response.put("matchedRows", matchedPage.getRows());
+        response.put("mismatchedRows", resultQueryService.firstPage(mismatched).getRows());
+        response.put("pageSize", matchedPage.getLimit());
     }
 }
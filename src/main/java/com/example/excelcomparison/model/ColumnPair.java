@@ -0,0 +1,38 @@
+package com.example.excelcomparison.model;
+
+/**
+ * One column of a comparison key: a header from the first file and the header it
+ * is matched against in the second.
+ */
+public class ColumnPair {
+    private String column1;
+    private String column2;
+
+    public ColumnPair() {}
+
+    public ColumnPair(String column1, String column2) {
+        this.column1 = column1;
+        this.column2 = column2;
+    }
+
+    public String getColumn1() {
+        return column1;
+    }
+
+    public void setColumn1(String column1) {
+        this.column1 = column1;
+    }
+
+    public String getColumn2() {
+        return column2;
+    }
+
+    public void setColumn2(String column2) {
+        this.column2 = column2;
+    }
+
+    public boolean isValid() {
+        return column1 != null && !column1.trim().isEmpty() &&
+               column2 != null && !column2.trim().isEmpty();
+    }
+}
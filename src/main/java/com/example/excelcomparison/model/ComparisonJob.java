@@ -0,0 +1,156 @@
+package com.example.excelcomparison.model;
+
+import java.util.Map;
+
+/**
+ * Status of a comparison submitted through the job API. Fields are written by the
+ * worker thread and read by status requests, so they are volatile. Status changes
+ * are checked and made under the job's lock, so a job finishes exactly once: a
+ * cancel and the worker's own completion cannot both win.
+ */
+public class ComparisonJob {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    }
+
+    public enum Phase {
+        PARSING, INDEXING, JOINING, MATERIALIZING
+    }
+
+    private final String jobId;
+    private final long submittedAt;
+    private volatile Status status = Status.QUEUED;
+    private volatile Phase phase;
+    private volatile long rowsProcessed;
+    private volatile String resultId;
+    private volatile int matchedCount;
+    private volatile int mismatchedCount;
+    private volatile boolean cached;
+    private volatile Map<String, Integer> columnChanges;
+    private volatile String message;
+    private volatile long finishedAt;
+
+    public ComparisonJob(String jobId) {
+        this.jobId = jobId;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * Moves a queued job to running. Returns {@code false} if it was cancelled first.
+     */
+    public synchronized boolean start() {
+        if (status != Status.QUEUED) {
+            return false;
+        }
+        status = Status.RUNNING;
+        return true;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    /**
+     * Rows handled so far in the current phase.
+     */
+    public long getRowsProcessed() {
+        return rowsProcessed;
+    }
+
+    public void progress(Phase phase, long rowsProcessed) {
+        this.phase = phase;
+        this.rowsProcessed = rowsProcessed;
+    }
+
+    public String getResultId() {
+        return resultId;
+    }
+
+    public int getMatchedCount() {
+        return matchedCount;
+    }
+
+    public int getMismatchedCount() {
+        return mismatchedCount;
+    }
+
+    /**
+     * Whether the result was reused from an identical earlier comparison.
+     */
+    public boolean isCached() {
+        return cached;
+    }
+
+    /**
+     * Changed rows per mapped column of a row diff, or {@code null}.
+     */
+    public Map<String, Integer> getColumnChanges() {
+        return columnChanges;
+    }
+
+    public void setColumnChanges(Map<String, Integer> columnChanges) {
+        this.columnChanges = columnChanges;
+    }
+
+    public boolean complete(String resultId, int matchedCount, int mismatchedCount) {
+        return complete(resultId, matchedCount, mismatchedCount, false);
+    }
+
+    /**
+     * Records the result and marks the job completed. Returns {@code false}, leaving
+     * the job as it is, if it had already finished.
+     */
+    public synchronized boolean complete(String resultId, int matchedCount, int mismatchedCount, boolean cached) {
+        if (isFinished()) {
+            return false;
+        }
+        this.resultId = resultId;
+        this.matchedCount = matchedCount;
+        this.mismatchedCount = mismatchedCount;
+        this.cached = cached;
+        return finish(Status.COMPLETED, null);
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    /**
+     * Moves the job to a final status. Returns {@code false}, leaving the job as it
+     * is, if it had already finished.
+     */
+    public synchronized boolean finish(Status status, String message) {
+        if (isFinished()) {
+            return false;
+        }
+        this.message = message;
+        this.finishedAt = System.currentTimeMillis();
+        this.status = status;
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return status == Status.CANCELLED;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED || status == Status.CANCELLED;
+    }
+}
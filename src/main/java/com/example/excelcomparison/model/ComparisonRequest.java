@@ -1,10 +1,17 @@
 package com.example.excelcomparison.model;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 public class ComparisonRequest {
     private String file1Id;
     private String file2Id;
     private String column1;
     private String column2;
+    private List<ColumnPair> keyColumns;
+    private List<ColumnPair> columnMapping;
+    private JoinMode joinMode = JoinMode.DISTINCT_KEYS;
 
     public ComparisonRequest() {}
 
@@ -47,10 +54,82 @@ public class ComparisonRequest {
         this.column2 = column2;
     }
 
+    /**
+     * Column pairs forming a composite key, in order. When set, they replace
+     * {@code column1}/{@code column2}.
+     */
+    public List<ColumnPair> getKeyColumns() {
+        return keyColumns;
+    }
+
+    public void setKeyColumns(List<ColumnPair> keyColumns) {
+        this.keyColumns = keyColumns;
+    }
+
+    /**
+     * The effective key: {@link #getKeyColumns()} if given, otherwise the single
+     * {@code column1}/{@code column2} pair.
+     */
+    public List<ColumnPair> keyPairs() {
+        if (keyColumns != null && !keyColumns.isEmpty()) {
+            return keyColumns;
+        }
+        return Collections.singletonList(new ColumnPair(column1, column2));
+    }
+
+    public List<String> keyColumns1() {
+        List<String> columns = new ArrayList<>();
+        for (ColumnPair pair : keyPairs()) {
+            columns.add(pair.getColumn1());
+        }
+        return columns;
+    }
+
+    public List<String> keyColumns2() {
+        List<String> columns = new ArrayList<>();
+        for (ColumnPair pair : keyPairs()) {
+            columns.add(pair.getColumn2());
+        }
+        return columns;
+    }
+
+    /**
+     * For {@code ROW_DIFF}: the columns compared on matched rows, as pairs of a
+     * first-file and a second-file header. When empty, columns with the same
+     * header in both files are compared.
+     */
+    public List<ColumnPair> getColumnMapping() {
+        return columnMapping;
+    }
+
+    public void setColumnMapping(List<ColumnPair> columnMapping) {
+        this.columnMapping = columnMapping;
+    }
+
+    public JoinMode getJoinMode() {
+        return joinMode;
+    }
+
+    public void setJoinMode(JoinMode joinMode) {
+        this.joinMode = joinMode != null ? joinMode : JoinMode.DISTINCT_KEYS;
+    }
+
     public boolean isValid() {
-        return file1Id != null && !file1Id.trim().isEmpty() &&
-               file2Id != null && !file2Id.trim().isEmpty() &&
-               column1 != null && !column1.trim().isEmpty() &&
-               column2 != null && !column2.trim().isEmpty();
+        if (file1Id == null || file1Id.trim().isEmpty() || file2Id == null || file2Id.trim().isEmpty()) {
+            return false;
+        }
+        for (ColumnPair pair : keyPairs()) {
+            if (pair == null || !pair.isValid()) {
+                return false;
+            }
+        }
+        if (columnMapping != null) {
+            for (ColumnPair pair : columnMapping) {
+                if (pair == null || !pair.isValid()) {
+                    return false;
+                }
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,253 @@
+package com.example.excelcomparison.model;
+
+import java.util.*;
+
+/**
+ * Compact comparison result. Each row is a key, a row index into each source
+ * table ({@link #NONE} when absent or unused) and a status code, held in parallel
+ * primitive arrays; the key is only stored by comparisons whose keys are not whole
+ * cells. Cells are rendered by per-column functions when a page, CSV or workbook
+ * asks for them, so a result costs a few bytes per row however wide the rows it
+ * points at are. A row diff also stores which of its compared columns changed, as
+ * a bitset of {@link #getChangeWords()} longs per row.
+ *
+ * Source tables are referenced, not copied. They may be evicted from the sheet
+ * cache while a result still points at them, so the builder is told what its
+ * columns keep reachable and the result is charged for it.
+ */
+public class ComparisonRows implements RowSource {
+    public static final int NONE = -1;
+
+    private final List<String> headers;
+    private final Column[] columns;
+    private final String[] statuses;
+    private final String[] keys;
+    private final int[] leftRows;
+    private final int[] rightRows;
+    private final byte[] statusCodes;
+    private final long[] changes;
+    private final int changeWords;
+    private final int rowCount;
+    private final long retainedBytes;
+
+    private ComparisonRows(Builder builder) {
+        this.headers = Collections.unmodifiableList(new ArrayList<>(builder.headers));
+        this.columns = builder.columns.toArray(new Column[0]);
+        this.statuses = builder.statuses;
+        this.rowCount = builder.rowCount;
+        this.retainedBytes = builder.retainedBytes;
+        this.keys = builder.keys != null ? Arrays.copyOf(builder.keys, rowCount) : null;
+        this.leftRows = Arrays.copyOf(builder.leftRows, rowCount);
+        this.rightRows = Arrays.copyOf(builder.rightRows, rowCount);
+        this.statusCodes = Arrays.copyOf(builder.statusCodes, rowCount);
+        this.changeWords = builder.changeWords;
+        this.changes = builder.changes != null ? Arrays.copyOf(builder.changes, rowCount * changeWords) : null;
+    }
+
+    /**
+     * @param statuses display text of each status code, in code order
+     */
+    public static Builder builder(String... statuses) {
+        return new Builder(statuses);
+    }
+
+    /**
+     * The stored key, or {@code null} if the comparison did not store one.
+     */
+    public String getKey(int row) {
+        return keys != null ? keys[row] : null;
+    }
+
+    public int getLeftRow(int row) {
+        return leftRows[row];
+    }
+
+    public int getRightRow(int row) {
+        return rightRows[row];
+    }
+
+    public int getStatusCode(int row) {
+        return statusCodes[row];
+    }
+
+    public String getStatus(int row) {
+        return statuses[statusCodes[row]];
+    }
+
+    /**
+     * Whether the row's bitset marks the compared column as changed; always
+     * {@code false} for results that track no changes.
+     */
+    public boolean isChanged(int row, int column) {
+        return changes != null && (changes[row * changeWords + (column >>> 6)] & (1L << column)) != 0;
+    }
+
+    /**
+     * Longs per row in the change bitsets, or 0 when no changes are tracked.
+     */
+    public int getChangeWords() {
+        return changeWords;
+    }
+
+    @Override
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getValue(int column, int row) {
+        return columns[column].value(this, row);
+    }
+
+    @Override
+    public Map<String, Object> getRow(int row) {
+        Map<String, Object> rowData = new LinkedHashMap<>();
+        for (int j = 0; j < columns.length; j++) {
+            rowData.put(headers.get(j), getValue(j, row));
+        }
+        return rowData;
+    }
+
+    @Override
+    public int columnIndex(String header) {
+        return headers.lastIndexOf(header);
+    }
+
+    /**
+     * The row arrays and change bitsets, each stored key string counted once per run
+     * of rows sharing it, and whatever the columns retain.
+     */
+    @Override
+    public long estimatedBytes() {
+        long bytes = 64 + 9L * rowCount + 8L * rowCount * changeWords + retainedBytes;
+        if (keys != null) {
+            bytes += 8L * rowCount;
+            for (int i = 0; i < rowCount; i++) {
+                if (keys[i] != null && (i == 0 || keys[i] != keys[i - 1])) {
+                    bytes += 40 + 2L * keys[i].length();
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Renders one column's cell for a row from the row's references.
+     */
+    @FunctionalInterface
+    public interface Column {
+        String value(ComparisonRows rows, int row);
+    }
+
+    public static class Builder {
+        private final String[] statuses;
+        private final List<String> headers = new ArrayList<>();
+        private final List<Column> columns = new ArrayList<>();
+        private String[] keys;
+        private int[] leftRows = new int[16];
+        private int[] rightRows = new int[16];
+        private byte[] statusCodes = new byte[16];
+        private long[] changes;
+        private int changeWords;
+        private int rowCount;
+        private long retainedBytes;
+
+        private Builder(String[] statuses) {
+            if (statuses.length > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("At most " + Byte.MAX_VALUE + " statuses");
+            }
+            this.statuses = statuses;
+        }
+
+        public Builder column(String header, Column column) {
+            headers.add(header);
+            columns.add(column);
+            return this;
+        }
+
+        /**
+         * Charges the result for data its columns read from, such as the source
+         * tables, which the result keeps reachable for as long as it is stored.
+         */
+        public Builder retains(long bytes) {
+            retainedBytes += bytes;
+            return this;
+        }
+
+        /**
+         * Gives every row a bitset over {@code columns} compared columns, set through
+         * {@link #add(String, int, int, int, long[])}. Must be called before rows are added.
+         */
+        public Builder trackChanges(int columns) {
+            if (rowCount > 0) {
+                throw new IllegalStateException("Changes must be tracked from the first row");
+            }
+            changeWords = (columns + 63) >>> 6;
+            changes = new long[leftRows.length * changeWords];
+            return this;
+        }
+
+        /**
+         * Appends a row. The key array is only allocated once a key is given.
+         */
+        public Builder add(String key, int leftRow, int rightRow, int status) {
+            return add(key, leftRow, rightRow, status, null);
+        }
+
+        /**
+         * Appends a row with its change bitset, {@code null} when nothing changed.
+         */
+        public Builder add(String key, int leftRow, int rightRow, int status, long[] changed) {
+            if (status < 0 || status >= statuses.length) {
+                throw new IllegalArgumentException("Unknown status code " + status);
+            }
+            if (rowCount == leftRows.length) {
+                int capacity = rowCount * 2;
+                leftRows = Arrays.copyOf(leftRows, capacity);
+                rightRows = Arrays.copyOf(rightRows, capacity);
+                statusCodes = Arrays.copyOf(statusCodes, capacity);
+                if (changes != null) {
+                    changes = Arrays.copyOf(changes, capacity * changeWords);
+                }
+                if (keys != null) {
+                    keys = Arrays.copyOf(keys, capacity);
+                }
+            }
+            if (key != null && keys == null) {
+                keys = new String[leftRows.length];
+            }
+            if (keys != null) {
+                keys[rowCount] = key;
+            }
+            leftRows[rowCount] = leftRow;
+            rightRows[rowCount] = rightRow;
+            statusCodes[rowCount] = (byte) status;
+            if (changed != null) {
+                if (changes == null || changed.length != changeWords) {
+                    throw new IllegalArgumentException("Change bitset does not match the tracked columns");
+                }
+                System.arraycopy(changed, 0, changes, rowCount * changeWords, changeWords);
+            }
+            rowCount++;
+            return this;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+
+        public ComparisonRows build() {
+            return new ComparisonRows(this);
+        }
+    }
+}
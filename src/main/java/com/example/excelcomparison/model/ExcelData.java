@@ -9,6 +9,7 @@ public class ExcelData {
     private List<Map<String, Object>> rows;
     private List<String> sheetNames;
     private String selectedSheet;
+    private SheetTable table;
 
     public ExcelData() {}
 
@@ -27,6 +28,13 @@ public class ExcelData {
         this.selectedSheet = selectedSheet;
     }
 
+    public ExcelData(String fileName, SheetTable table, List<String> sheetNames, String selectedSheet) {
+        this.fileName = fileName;
+        this.sheetNames = sheetNames;
+        this.selectedSheet = selectedSheet;
+        setTable(table);
+    }
+
     public String getFileName() {
         return fileName;
     }
@@ -43,12 +51,48 @@ public class ExcelData {
         this.headers = headers;
     }
 
+    /**
+     * Row-map view of the data. Table-backed instances derive it lazily from the
+     * columnar table; maps are built per access rather than stored.
+     */
     public List<Map<String, Object>> getRows() {
+        if (rows == null && table != null) {
+            return table.asRowMaps();
+        }
         return rows;
     }
 
     public void setRows(List<Map<String, Object>> rows) {
         this.rows = rows;
+        this.table = null;
+    }
+
+    /**
+     * Columnar form of the data, encoded from the row maps on first use when this
+     * instance was built from rows.
+     */
+    public SheetTable getTable() {
+        if (table == null && rows != null) {
+            table = headers != null ? SheetTable.fromRows(headers, rows) : SheetTable.fromRows(rows);
+        }
+        return table;
+    }
+
+    public void setTable(SheetTable table) {
+        this.table = table;
+        this.rows = null;
+        if (table != null) {
+            this.headers = table.getHeaders();
+        }
+    }
+
+    /**
+     * Whether the table holds every header's column. Projected parses keep only the
+     * columns a comparison needs.
+     */
+    public boolean hasAllColumns() {
+        SheetTable table = getTable();
+        return table == null || headers == null || table.getColumnCount() == headers.size();
     }
 
     public List<String> getSheetNames() {
@@ -0,0 +1,34 @@
+package com.example.excelcomparison.model;
+
+/**
+ * How rows that share a key are paired up by a comparison.
+ */
+public enum JoinMode {
+    /** One result per distinct key; when a key repeats, a single row represents it. */
+    DISTINCT_KEYS,
+    /** One result per matching row pair, so duplicate keys join many-to-many. */
+    ALL_ROWS,
+    /**
+     * One-sided: each distinct key of the first column, reported as matched or as
+     * missing from the second column. Suited to checking against a large reference.
+     */
+    MISSING_KEYS,
+    /**
+     * Distinct keys like {@code DISTINCT_KEYS}, found by sorting each column in
+     * bounded-memory runs spilled to disk and merging the two sorted streams
+     * instead of hashing. Comma-separated cells are split; results are in key order.
+     */
+    SORT_MERGE,
+    /**
+     * Each distinct key of the first column paired with the most similar key of the
+     * second, after normalization, if their trigram similarity reaches the
+     * configured threshold. Keys of the second column no key matched are reported too.
+     */
+    FUZZY,
+    /**
+     * Keys found in both columns with their rows compared cell by cell over a
+     * column mapping; matched rows that differ are reported with the old and new
+     * value of each changed cell.
+     */
+    ROW_DIFF
+}
@@ -0,0 +1,28 @@
+package com.example.excelcomparison.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to a table of string cells by position. Parsed sheets and comparison
+ * results both provide it, so paging, CSV and workbook export work on either.
+ */
+public interface RowSource {
+
+    List<String> getHeaders();
+
+    int getRowCount();
+
+    int getColumnCount();
+
+    String getValue(int column, int row);
+
+    Map<String, Object> getRow(int row);
+
+    /**
+     * Index of the column a row map would return for {@code header}, or -1.
+     */
+    int columnIndex(String header);
+
+    long estimatedBytes();
+}
@@ -0,0 +1,167 @@
+package com.example.excelcomparison.model;
+
+import java.util.*;
+
+/**
+ * Column-oriented, dictionary-encoded storage for one sheet. Every column is an
+ * {@code int[]} of codes into a {@link StringPool} shared by the whole table, so
+ * repeated values and header names are held once instead of once per row.
+ */
+public class SheetTable implements RowSource {
+    private final List<String> headers;
+    private final StringPool pool;
+    private final int[][] columns;
+    private final int rowCount;
+
+    private SheetTable(List<String> headers, StringPool pool, int[][] columns, int rowCount) {
+        this.headers = headers;
+        this.pool = pool;
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    public static Builder builder(List<String> headers) {
+        return new Builder(headers);
+    }
+
+    /**
+     * Encodes row maps into a table. Headers are taken from the first row's keys,
+     * the same way the result export lays out its header row.
+     */
+    public static SheetTable fromRows(List<Map<String, Object>> rows) {
+        List<String> headers = new ArrayList<>();
+        if (rows != null && !rows.isEmpty() && rows.get(0) != null) {
+            headers.addAll(rows.get(0).keySet());
+        }
+        return fromRows(headers, rows);
+    }
+
+    public static SheetTable fromRows(List<String> headers, List<Map<String, Object>> rows) {
+        Builder builder = builder(headers != null ? headers : new ArrayList<>());
+        if (rows != null) {
+            String[] values = new String[builder.headers.size()];
+            for (Map<String, Object> row : rows) {
+                if (row == null) continue;
+                for (int j = 0; j < values.length; j++) {
+                    Object value = row.get(builder.headers.get(j));
+                    values[j] = value != null ? value.toString() : null;
+                }
+                builder.addRow(values);
+            }
+        }
+        return builder.build();
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    public StringPool getPool() {
+        return pool;
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Index of the column a row map would return for {@code header}. Duplicate header
+     * names resolve to the last column, matching {@code LinkedHashMap.put} semantics.
+     */
+    public int columnIndex(String header) {
+        return headers.lastIndexOf(header);
+    }
+
+    public int[] getColumnCodes(int column) {
+        return columns[column];
+    }
+
+    public int getCode(int column, int row) {
+        return columns[column][row];
+    }
+
+    public String getValue(int column, int row) {
+        return pool.get(columns[column][row]);
+    }
+
+    public Map<String, Object> getRow(int row) {
+        Map<String, Object> rowData = new LinkedHashMap<>();
+        for (int j = 0; j < columns.length; j++) {
+            rowData.put(headers.get(j), pool.get(columns[j][row]));
+        }
+        return rowData;
+    }
+
+    /**
+     * Read-only row-map view for callers that still work with {@code List<Map>}.
+     * Maps are built on access and not retained.
+     */
+    public List<Map<String, Object>> asRowMaps() {
+        return new RowView();
+    }
+
+    public long estimatedBytes() {
+        return 64 + pool.estimatedBytes() + (long) columns.length * (16 + 4L * rowCount);
+    }
+
+    private class RowView extends AbstractList<Map<String, Object>> implements RandomAccess {
+        @Override
+        public Map<String, Object> get(int index) {
+            if (index < 0 || index >= rowCount) {
+                throw new IndexOutOfBoundsException("Row " + index + " of " + rowCount);
+            }
+            return getRow(index);
+        }
+
+        @Override
+        public int size() {
+            return rowCount;
+        }
+    }
+
+    public static class Builder {
+        private final List<String> headers;
+        private final StringPool pool = new StringPool();
+        private int[][] columns;
+        private int rowCount;
+
+        private Builder(List<String> headers) {
+            this.headers = headers;
+            this.columns = new int[headers.size()][16];
+        }
+
+        public StringPool getPool() {
+            return pool;
+        }
+
+        /**
+         * Appends a row; {@code values} is read positionally against the headers and
+         * missing or null entries are stored as empty strings.
+         */
+        public Builder addRow(String[] values) {
+            if (rowCount > 0 && columns.length > 0 && rowCount == columns[0].length) {
+                int capacity = rowCount * 2;
+                for (int j = 0; j < columns.length; j++) {
+                    columns[j] = Arrays.copyOf(columns[j], capacity);
+                }
+            }
+            for (int j = 0; j < columns.length; j++) {
+                columns[j][rowCount] = j < values.length ? pool.intern(values[j]) : StringPool.EMPTY;
+            }
+            rowCount++;
+            return this;
+        }
+
+        public SheetTable build() {
+            pool.freeze();
+            for (int j = 0; j < columns.length; j++) {
+                columns[j] = Arrays.copyOf(columns[j], rowCount);
+            }
+            return new SheetTable(Collections.unmodifiableList(new ArrayList<>(headers)), pool, columns, rowCount);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.excelcomparison.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Dictionary of distinct cell strings shared by every column of a {@link SheetTable}.
+ * Each distinct value is stored once and referenced by an int code; code 0 is always
+ * the empty string. The lookup map is only needed while interning and is dropped by
+ * {@link #freeze()}, leaving the code-to-string array.
+ */
+public class StringPool {
+    public static final int EMPTY = 0;
+
+    private Map<String, Integer> codes = new HashMap<>();
+    private String[] values = new String[64];
+    private int size;
+
+    public StringPool() {
+        intern("");
+    }
+
+    public int intern(String value) {
+        if (value == null) {
+            return EMPTY;
+        }
+        if (codes == null) {
+            throw new IllegalStateException("String pool is frozen");
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        codes.put(value, size);
+        return size++;
+    }
+
+    /**
+     * Ends interning: releases the lookup map and trims the value array.
+     */
+    public void freeze() {
+        codes = null;
+        values = Arrays.copyOf(values, size);
+    }
+
+    public String get(int code) {
+        return values[code];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Rough heap footprint: the string contents plus, until frozen, the dictionary
+     * entry overhead.
+     */
+    public long estimatedBytes() {
+        long bytes = (long) values.length * 4;
+        for (int i = 0; i < size; i++) {
+            bytes += 40 + 2L * values[i].length() + (codes != null ? 48 : 0);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.excelcomparison.model;
+
+/**
+ * Everything kept for one upload: the original name, the spilled bytes (needed to
+ * reopen the workbook) and the currently selected sheet.
+ */
+public class UploadedFile {
+    private static final long OVERHEAD_BYTES = 64;
+
+    private final String fileName;
+    private final SpilledContent content;
+    private ExcelData data;
+
+    public UploadedFile(String fileName, SpilledContent content, ExcelData data) {
+        this.fileName = fileName;
+        this.content = content;
+        this.data = data;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public SpilledContent getContent() {
+        return content;
+    }
+
+    public ExcelData getData() {
+        return data;
+    }
+
+    public void setData(ExcelData data) {
+        this.data = data;
+    }
+
+    /**
+     * Heap held by the upload itself. The selected sheet is usually a projection
+     * with no columns loaded, so the open workbook, charged separately, is most of
+     * what an upload costs; the raw bytes live on disk.
+     */
+    public long estimatedBytes() {
+        long bytes = OVERHEAD_BYTES;
+        if (data != null && data.getTable() != null) {
+            bytes += data.getTable().estimatedBytes();
+        }
+        return bytes;
+    }
+}
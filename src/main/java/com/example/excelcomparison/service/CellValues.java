@@ -0,0 +1,53 @@
+package com.example.excelcomparison.service;
+
+import org.apache.poi.ss.usermodel.DateUtil;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Text for typed cell values, shared by both readers so that both render a cell
+ * the same way: an integral number is rendered from its {@code long} value
+ * ({@code 1001}, not {@code 1001.0}) and so matches the same ID typed as text, and
+ * a date is rendered as an ISO date. Keys are compared as these strings. Text is
+ * stored as entered; keys are trimmed where they are extracted, so headers and
+ * displayed cells keep their whitespace.
+ */
+final class CellValues {
+
+    // Excel keeps 15 significant digits; integral doubles up to here are exact longs
+    private static final double MAX_EXACT_INTEGRAL = 1e15;
+
+    private CellValues() {
+    }
+
+    static String numeric(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_INTEGRAL) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * A date-formatted numeric cell. Whole days become {@code yyyy-MM-dd}; values
+     * with a time of day keep it as an ISO local date-time.
+     */
+    static String date(double excelDate) {
+        return date(DateUtil.getLocalDateTime(excelDate));
+    }
+
+    static String date(LocalDateTime dateTime) {
+        if (dateTime.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            return dateTime.toLocalDate().toString();
+        }
+        return dateTime.toString();
+    }
+
+    static String bool(boolean value) {
+        return String.valueOf(value);
+    }
+
+    static String text(String value) {
+        return value != null ? value : "";
+    }
+}
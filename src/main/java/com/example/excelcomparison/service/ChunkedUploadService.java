@@ -0,0 +1,224 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.SpilledContent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Receives an upload in chunks, each appended to a staging file in the spill
+ * directory straight from the request stream. The server's received byte count is
+ * the resume point: after a dropped connection the client asks for it and sends
+ * the rest from there. Uploads untouched for {@code storage.chunked.expiry} are
+ * discarded along with their staging file, and none may declare more than
+ * {@code storage.chunked.max-size}.
+ */
+@Service
+public class ChunkedUploadService {
+
+    @Autowired
+    private UploadSpillStore uploadSpillStore;
+
+    private final long expiryMillis;
+    private final long maxSize;
+    private final Map<String, StagedUpload> uploads = new ConcurrentHashMap<>();
+
+    public ChunkedUploadService(@Value("${storage.chunked.expiry:1h}") Duration expiry,
+                                @Value("${storage.chunked.max-size:1GB}") DataSize maxSize) {
+        this.expiryMillis = expiry.toMillis();
+        this.maxSize = maxSize.toBytes();
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public StagedUpload start(String fileName, long size) throws IOException {
+        pruneExpired();
+        if (size <= 0) {
+            throw new IllegalArgumentException("Upload size must be positive");
+        }
+        if (size > maxSize) {
+            throw new IllegalArgumentException("Upload size exceeds the maximum of " + maxSize + " bytes");
+        }
+        StagedUpload upload = new StagedUpload(UUID.randomUUID().toString(), fileName, size,
+                uploadSpillStore.createStagingFile());
+        uploads.put(upload.getUploadId(), upload);
+        return upload;
+    }
+
+    public StagedUpload get(String uploadId) {
+        StagedUpload upload = uploads.get(uploadId);
+        if (upload != null) {
+            upload.touch();
+        }
+        return upload;
+    }
+
+    /**
+     * Writes a chunk at {@code offset} and returns the bytes received so far. The
+     * offset may be at or before the received count, so a chunk whose
+     * acknowledgement was lost can simply be sent again; bytes after it are dropped.
+     *
+     * @throws IllegalStateException if the offset leaves a gap or the chunk runs
+     *                               past the declared size
+     */
+    public long append(String uploadId, long offset, InputStream chunk) throws IOException {
+        StagedUpload upload = require(uploadId);
+        synchronized (upload) {
+            if (uploads.get(uploadId) != upload) {
+                throw new IllegalArgumentException("Upload not found or expired: " + uploadId);
+            }
+            if (offset < 0 || offset > upload.received) {
+                throw new IllegalStateException("Expected a chunk at offset " + upload.received + ", got " + offset);
+            }
+            try (FileChannel channel = FileChannel.open(upload.path, StandardOpenOption.WRITE);
+                 ReadableByteChannel in = Channels.newChannel(chunk)) {
+                channel.truncate(offset);
+                long position = offset;
+                long limit = upload.size - offset;
+                long written;
+                // transferFrom copies through a small buffer, never the whole chunk
+                while ((written = channel.transferFrom(in, position, Math.min(1 << 20, limit + 1))) > 0) {
+                    position += written;
+                    limit -= written;
+                    if (limit < 0) {
+                        channel.truncate(offset);
+                        upload.received = offset;
+                        throw new IllegalStateException("Chunk runs past the declared size of " + upload.size + " bytes");
+                    }
+                }
+                upload.received = position;
+            } catch (IOException e) {
+                // Whatever reached the file before the failure is kept for the resume
+                upload.received = Files.size(upload.path);
+                throw e;
+            } finally {
+                upload.touch();
+            }
+            return upload.received;
+        }
+    }
+
+    /**
+     * Ends a fully received upload and hands its bytes to the spill store. If that
+     * fails the upload stays staged, so it can be completed again, aborted, or left
+     * to expire with its staging file.
+     */
+    public CompletedUpload complete(String uploadId) throws IOException {
+        StagedUpload upload = require(uploadId);
+        synchronized (upload) {
+            if (upload.received != upload.size) {
+                throw new IllegalStateException("Upload incomplete: received " + upload.received + " of "
+                        + upload.size + " bytes");
+            }
+            SpilledContent content = uploadSpillStore.adopt(upload.path);
+            uploads.remove(uploadId);
+            return new CompletedUpload(upload.fileName, content);
+        }
+    }
+
+    public boolean abort(String uploadId) throws IOException {
+        StagedUpload upload = uploads.remove(uploadId);
+        if (upload == null) {
+            return false;
+        }
+        synchronized (upload) {
+            Files.deleteIfExists(upload.path);
+        }
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        for (String uploadId : uploads.keySet()) {
+            abort(uploadId);
+        }
+    }
+
+    private StagedUpload require(String uploadId) {
+        StagedUpload upload = uploads.get(uploadId);
+        if (upload == null) {
+            throw new IllegalArgumentException("Upload not found or expired: " + uploadId);
+        }
+        return upload;
+    }
+
+    private void pruneExpired() throws IOException {
+        long cutoff = System.currentTimeMillis() - expiryMillis;
+        for (StagedUpload upload : uploads.values()) {
+            if (upload.lastActive < cutoff) {
+                abort(upload.getUploadId());
+            }
+        }
+    }
+
+    public static class StagedUpload {
+        private final String uploadId;
+        private final String fileName;
+        private final long size;
+        private final Path path;
+        private volatile long received;
+        private volatile long lastActive = System.currentTimeMillis();
+
+        StagedUpload(String uploadId, String fileName, long size, Path path) {
+            this.uploadId = uploadId;
+            this.fileName = fileName;
+            this.size = size;
+            this.path = path;
+        }
+
+        public String getUploadId() {
+            return uploadId;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getReceived() {
+            return received;
+        }
+
+        void touch() {
+            lastActive = System.currentTimeMillis();
+        }
+    }
+
+    public static class CompletedUpload {
+        private final String fileName;
+        private final SpilledContent content;
+
+        CompletedUpload(String fileName, SpilledContent content) {
+            this.fileName = fileName;
+            this.content = content;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public SpilledContent getContent() {
+            return content;
+        }
+    }
+}
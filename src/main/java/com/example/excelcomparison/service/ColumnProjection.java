@@ -0,0 +1,66 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.model.SheetTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The columns of a sheet that a parse should keep. Readers look up each sheet
+ * column's position in the projected table and skip cells that have none, so
+ * unrequested columns are never converted or interned.
+ */
+final class ColumnProjection {
+    private final List<String> sheetHeaders;
+    private final List<String> headers = new ArrayList<>();
+    private final int[] positions;
+
+    /**
+     * @param columns the headers to keep, or {@code null} for every column
+     */
+    ColumnProjection(List<String> sheetHeaders, Set<String> columns) {
+        this.sheetHeaders = sheetHeaders;
+        this.positions = new int[sheetHeaders.size()];
+        Arrays.fill(positions, -1);
+        for (int column = 0; column < sheetHeaders.size(); column++) {
+            if (columns == null || columns.contains(sheetHeaders.get(column))) {
+                positions[column] = headers.size();
+                headers.add(sheetHeaders.get(column));
+            }
+        }
+    }
+
+    /**
+     * Headers of the projected table, in sheet order.
+     */
+    List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Position of a sheet column in the projected table, or -1 if it is not kept.
+     */
+    int positionOf(int sheetColumn) {
+        return sheetColumn < positions.length ? positions[sheetColumn] : -1;
+    }
+
+    boolean isComplete() {
+        return headers.size() == sheetHeaders.size();
+    }
+
+    /**
+     * Wraps a projected table. The result still lists every sheet header, so
+     * callers can validate column names against it.
+     */
+    ExcelData toExcelData(String fileName, SheetTable table, List<String> sheetNames, String selectedSheet) {
+        ExcelData data = new ExcelData(fileName, table, sheetNames, selectedSheet);
+        if (!isComplete()) {
+            data.setHeaders(Collections.unmodifiableList(new ArrayList<>(sheetHeaders)));
+        }
+        return data;
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.SheetTable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One pass over a key column that gathers everything either comparison strategy
+ * needs: the distinct keys, every (key, row) pair, and whether any cell holds
+ * comma-separated values.
+ *
+ * The scan starts out treating each cell as a single trimmed key and switches to
+ * splitting on commas from the first multi-valued cell on. Keys collected before
+ * the switch stay valid, since a cell without commas splits into itself. Work is
+ * done once per distinct dictionary code, not once per row, so each distinct cell
+ * is trimmed once; a cell without surrounding whitespace keys on its pooled string.
+ */
+final class ColumnScan {
+    private static final String[] NO_KEYS = new String[0];
+
+    private final List<String> keys = new ArrayList<>();
+    private final IntArrayList rows = new IntArrayList();
+    private final List<String> distinctKeys = new ArrayList<>();
+    private boolean multiValued;
+
+    private ColumnScan() {
+    }
+
+    static ColumnScan scan(SheetTable table, String columnName) {
+        ColumnScan scan = new ColumnScan();
+        int column = table != null ? table.columnIndex(columnName) : -1;
+        if (column < 0) {
+            return scan;
+        }
+
+        int[] codes = table.getColumnCodes(column);
+        String[][] keysByCode = new String[table.getPool().size()][];
+        for (int row = 0; row < codes.length; row++) {
+            int code = codes[row];
+            String[] cellKeys = keysByCode[code];
+            if (cellKeys == null) {
+                cellKeys = scan.keysOf(table.getPool().get(code));
+                keysByCode[code] = cellKeys;
+                for (String key : cellKeys) {
+                    scan.distinctKeys.add(key);
+                }
+            }
+            for (String key : cellKeys) {
+                scan.keys.add(key);
+                scan.rows.add(row);
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * The keys of {@code scan(table, columnName).getDistinctKeys()} without repeats,
+     * in first-seen order, read straight from the column's dictionary codes without
+     * collecting every (key, row) pair.
+     */
+    static List<String> distinctKeys(SheetTable table, String columnName) {
+        List<String> keys = new ArrayList<>();
+        int column = table != null ? table.columnIndex(columnName) : -1;
+        if (column < 0) {
+            return keys;
+        }
+        // Splitting every cell once any is multi-valued yields what the scan's late switch does
+        ColumnScan scan = new ColumnScan();
+        scan.multiValued = isMultiValued(table, columnName);
+        boolean[] seen = new boolean[table.getPool().size()];
+        boolean derived = false;
+        for (int code : table.getColumnCodes(column)) {
+            if (!seen[code]) {
+                seen[code] = true;
+                String value = table.getPool().get(code);
+                for (String key : scan.keysOf(value)) {
+                    keys.add(key);
+                    // Identity check: an untrimmed, unsplit cell keys on its pooled string
+                    derived |= key != value;
+                }
+            }
+        }
+        // Pooled strings are distinct per code; only trimmed or split keys can repeat
+        return derived ? unique(keys) : keys;
+    }
+
+    /**
+     * The keys without repeats, in first-seen order. Repeats are found in a sorted
+     * copy, so no hash set of the keys is built.
+     */
+    static List<String> unique(List<String> keys) {
+        String[] sorted = keys.toArray(NO_KEYS);
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (count == 0 || !sorted[i].equals(sorted[count - 1])) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        if (count == keys.size()) {
+            return keys;
+        }
+        boolean[] taken = new boolean[count];
+        List<String> unique = new ArrayList<>(count);
+        for (String key : keys) {
+            int index = Arrays.binarySearch(sorted, 0, count, key);
+            if (!taken[index]) {
+                taken[index] = true;
+                unique.add(key);
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Whether any cell of the column holds comma-separated keys, checked once per
+     * distinct value without collecting the keys.
+     */
+    static boolean isMultiValued(SheetTable table, String columnName) {
+        int column = table != null ? table.columnIndex(columnName) : -1;
+        if (column < 0) {
+            return false;
+        }
+        boolean[] checked = new boolean[table.getPool().size()];
+        for (int code : table.getColumnCodes(column)) {
+            if (!checked[code]) {
+                checked[code] = true;
+                if (table.getPool().get(code).indexOf(',') >= 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private String[] keysOf(String value) {
+        if (!multiValued && value.indexOf(',') >= 0) {
+            multiValued = true;
+        }
+        if (!multiValued) {
+            String key = value.trim();
+            return key.isEmpty() ? NO_KEYS : new String[]{key};
+        }
+
+        List<String> tokens = new ArrayList<>(2);
+        for (String token : value.split(",")) {
+            String key = token.trim();
+            if (!key.isEmpty()) {
+                tokens.add(key);
+            }
+        }
+        return tokens.toArray(NO_KEYS);
+    }
+
+    /**
+     * Every key in row order, paired index-for-index with {@link #getRows()}.
+     */
+    List<String> getKeys() {
+        return keys;
+    }
+
+    int[] getRows() {
+        return rows.toArray();
+    }
+
+    /**
+     * Keys of each distinct cell value; may still repeat when different cells trim
+     * or split to the same key.
+     */
+    List<String> getDistinctKeys() {
+        return distinctKeys;
+    }
+
+    boolean isMultiValued() {
+        return multiValued;
+    }
+}
@@ -0,0 +1,297 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ColumnPair;
+import com.example.excelcomparison.model.ComparisonJob;
+import com.example.excelcomparison.model.ComparisonRequest;
+import com.example.excelcomparison.model.ComparisonRows;
+import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.model.JoinMode;
+import com.example.excelcomparison.model.UploadedFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs comparisons off the request thread. Jobs share a small fixed pool with a
+ * bounded queue, so a burst of large comparisons is rejected instead of tying up
+ * the servlet workers. Synchronous comparisons wait on the same pool. Finished jobs
+ * are kept for {@code comparison.jobs.retention}.
+ */
+@Service
+public class ComparisonJobService {
+
+    @Autowired
+    private ComparisonService comparisonService;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private ComparisonResultCache resultCache;
+
+    @Autowired
+    private WorkbookSessionService workbookSessionService;
+
+    private final ThreadPoolExecutor executor;
+    private final long retentionMillis;
+    private final Map<String, ComparisonJob> jobs = new ConcurrentHashMap<>();
+    private final Map<String, Future<?>> running = new ConcurrentHashMap<>();
+
+    public ComparisonJobService(@Value("${comparison.jobs.threads:2}") int threads,
+                                @Value("${comparison.jobs.queue-capacity:16}") int queueCapacity,
+                                @Value("${comparison.jobs.retention:1h}") Duration retention) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> new Thread(task, "comparison-job-" + counter.incrementAndGet()));
+        this.retentionMillis = retention.toMillis();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queues a comparison and returns its job straight away.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     */
+    public ComparisonJob submit(ComparisonRequest request) {
+        pruneFinished();
+        ComparisonJob job = new ComparisonJob(UUID.randomUUID().toString());
+        jobs.put(job.getJobId(), job);
+        try {
+            running.put(job.getJobId(), executor.submit(() -> execute(job, request)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getJobId());
+            throw e;
+        }
+        return job;
+    }
+
+    public ComparisonJob get(String jobId) {
+        return jobs.get(jobId);
+    }
+
+    /**
+     * Cancels a queued job, or marks a running one cancelled so it stops at its next
+     * check and stores nothing. Returns {@code false} if the job is unknown or
+     * already finished.
+     */
+    public boolean cancel(String jobId) {
+        ComparisonJob job = jobs.get(jobId);
+        Future<?> future = running.remove(jobId);
+        if (job == null || future == null
+                || !job.finish(ComparisonJob.Status.CANCELLED, "Comparison was cancelled")) {
+            return false;
+        }
+        // No interrupt: it would close the shared workbook's file channel mid-read
+        future.cancel(false);
+        return true;
+    }
+
+    /**
+     * Runs a comparison on the job pool, waits for it and stores its result. It takes
+     * a place in the same queue as submitted jobs, and a failure is rethrown as is.
+     *
+     * @throws RejectedExecutionException when the queue is full
+     * @throws CancellationException when the waiting thread is interrupted
+     */
+    public ComparisonJob runNow(ComparisonRequest request) {
+        ComparisonJob job = new ComparisonJob(UUID.randomUUID().toString());
+        Future<?> future = executor.submit(() -> {
+            if (job.start()) {
+                compareAndStore(job, request, progressOf(job));
+            }
+        });
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            job.finish(ComparisonJob.Status.CANCELLED, "Comparison was cancelled");
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Comparison was cancelled");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+        return job;
+    }
+
+    private void execute(ComparisonJob job, ComparisonRequest request) {
+        if (!job.start()) {
+            return;
+        }
+        try {
+            compareAndStore(job, request, progressOf(job));
+        } catch (CancellationException e) {
+            job.finish(ComparisonJob.Status.CANCELLED, e.getMessage());
+        } catch (RuntimeException e) {
+            job.finish(ComparisonJob.Status.FAILED, e.getMessage());
+        } catch (OutOfMemoryError e) {
+            job.finish(ComparisonJob.Status.FAILED, "Comparison ran out of memory");
+            throw e;
+        } finally {
+            running.remove(job.getJobId());
+        }
+    }
+
+    /**
+     * Records the job's progress, and stops the comparison once the job is cancelled.
+     */
+    private static ComparisonProgress progressOf(ComparisonJob job) {
+        return new ComparisonProgress() {
+            @Override
+            public void update(ComparisonJob.Phase phase, long rows) {
+                if (isCancelled() || Thread.currentThread().isInterrupted()) {
+                    throw new CancellationException("Comparison was cancelled");
+                }
+                job.progress(phase, rows);
+            }
+
+            @Override
+            public boolean isCancelled() {
+                return job.isCancelled();
+            }
+        };
+    }
+
+    private void compareAndStore(ComparisonJob job, ComparisonRequest request, ComparisonProgress progress) {
+        progress.update(ComparisonJob.Phase.PARSING, 0);
+        UploadedFile upload1 = storageService.get(request.getFile1Id(), UploadedFile.class);
+        UploadedFile upload2 = storageService.get(request.getFile2Id(), UploadedFile.class);
+        if (upload1 == null || upload2 == null || upload1.getData() == null || upload2.getData() == null) {
+            throw new IllegalArgumentException("One or both files not found. Please upload files again.");
+        }
+
+        List<String> columns1 = request.keyColumns1();
+        List<String> columns2 = request.keyColumns2();
+
+        // The same sheets and columns compared the same way give the same result
+        List<Object> cacheKey = ComparisonResultCache.key(upload1, columns1, upload2, columns2,
+                request.getJoinMode(), request.getColumnMapping());
+        ComparisonResultCache.CachedResult cached = cacheKey != null
+                ? resultCache.get(cacheKey) : null;
+        if (cached != null) {
+            job.setColumnChanges(cached.getColumnChanges());
+            job.complete(cached.getResultId(), cached.getMatchedCount(), cached.getMismatchedCount(), true);
+            return;
+        }
+
+        // Parse just the key columns (and a row diff's mapped columns), and the rest of
+        // each sheet only for row-data output
+        Set<String> load1 = new HashSet<>(columns1);
+        Set<String> load2 = new HashSet<>(columns2);
+        List<ColumnPair> mapping = null;
+        if (request.getJoinMode() == JoinMode.ROW_DIFF && columns1.size() == 1) {
+            mapping = comparisonService.resolveColumnMapping(upload1.getData(), upload2.getData(),
+                    columns1.get(0), columns2.get(0), request.getColumnMapping());
+            for (ColumnPair pair : mapping) {
+                load1.add(pair.getColumn1());
+                load2.add(pair.getColumn2());
+            }
+        }
+        // Parsing cannot be interrupted, so cancellation is checked after each sheet
+        ExcelData file1 = loadColumns(request.getFile1Id(), upload1, load1);
+        progress.update(ComparisonJob.Phase.PARSING, rowCount(file1));
+        ExcelData file2 = loadColumns(request.getFile2Id(), upload2, load2);
+        if (comparisonService.needsRowData(file1, file2, columns1, columns2, request.getJoinMode())) {
+            progress.update(ComparisonJob.Phase.PARSING, rowCount(file1) + rowCount(file2));
+            file1 = loadColumns(request.getFile1Id(), upload1, null);
+            progress.update(ComparisonJob.Phase.PARSING, rowCount(file1) + rowCount(file2));
+            file2 = loadColumns(request.getFile2Id(), upload2, null);
+        }
+        progress.update(ComparisonJob.Phase.PARSING, rowCount(file1) + rowCount(file2));
+
+        ComparisonService.ComparisonResult result = mapping != null
+                ? comparisonService.compareRowDiff(file1, file2, columns1.get(0), columns2.get(0), mapping, progress)
+                : comparisonService.compareColumns(file1, file2, columns1, columns2, request.getJoinMode(), progress);
+
+        progress.update(ComparisonJob.Phase.MATERIALIZING, result.getMatchedCount() + result.getMismatchedCount());
+        String resultId = UUID.randomUUID().toString();
+        storeResult(resultId + "_matched", result.getMatched());
+        storeResult(resultId + "_mismatched", result.getMismatched());
+        job.setColumnChanges(result.getColumnChanges());
+        if (!job.complete(resultId, result.getMatchedCount(), result.getMismatchedCount())) {
+            // Cancelled while storing; nobody will ask for this result
+            storageService.remove(resultId + "_matched");
+            storageService.remove(resultId + "_mismatched");
+            return;
+        }
+        // Only a completed result is offered to identical comparisons
+        if (cacheKey != null) {
+            resultCache.put(cacheKey, resultId, result.getMatchedCount(), result.getMismatchedCount(),
+                    result.getColumnChanges());
+        }
+    }
+
+    private void pruneFinished() {
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < cutoff);
+        // A job can finish before its future is registered
+        running.keySet().removeIf(jobId -> {
+            ComparisonJob job = jobs.get(jobId);
+            return job == null || job.isFinished();
+        });
+    }
+
+    /**
+     * The upload's selected sheet with at least {@code columns} loaded, or with every
+     * column when {@code columns} is {@code null}.
+     */
+    private ExcelData loadColumns(String fileId, UploadedFile upload, Set<String> columns) {
+        ExcelData selected = upload.getData();
+        boolean loaded = columns == null ? selected.hasAllColumns() : hasColumns(selected, columns);
+        if (loaded) {
+            return selected;
+        }
+        int sheetIndex = selected.getSheetNames().indexOf(selected.getSelectedSheet());
+        try {
+            return columns == null
+                    ? workbookSessionService.getSheet(fileId, sheetIndex)
+                    : workbookSessionService.getColumns(fileId, sheetIndex, columns);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read " + upload.getFileName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean hasColumns(ExcelData data, Set<String> columns) {
+        for (String column : columns) {
+            // An unknown column is left for the comparison to report
+            boolean known = data.getHeaders() != null && data.getHeaders().contains(column);
+            if (known && !hasColumn(data, column)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasColumn(ExcelData data, String column) {
+        return data.getTable() != null && data.getTable().columnIndex(column) >= 0;
+    }
+
+    private static int rowCount(ExcelData data) {
+        return data.getTable() != null ? data.getTable().getRowCount() : 0;
+    }
+
+    private void storeResult(String key, ComparisonRows rows) {
+        storageService.put(key, rows, rows.estimatedBytes());
+    }
+}
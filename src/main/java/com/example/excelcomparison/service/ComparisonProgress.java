@@ -0,0 +1,22 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ComparisonJob;
+
+/**
+ * Receives phase and row-count updates from a running comparison. Implementations
+ * may throw {@link java.util.concurrent.CancellationException} to stop the work.
+ */
+public interface ComparisonProgress {
+
+    ComparisonProgress NONE = (phase, rows) -> { };
+
+    void update(ComparisonJob.Phase phase, long rows);
+
+    /**
+     * Whether the work should stop. Polled by pool threads, which cannot rely on the
+     * caller's interrupt or throw through {@link #update}.
+     */
+    default boolean isCancelled() {
+        return false;
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ColumnPair;
+import com.example.excelcomparison.model.ComparisonRows;
+import com.example.excelcomparison.model.JoinMode;
+import com.example.excelcomparison.model.UploadedFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * Remembers which stored result answers a comparison, keyed by each side's content
+ * hash, sheet and key columns plus the join mode and column mapping, so an identical request can reuse the
+ * result instead of recomputing it. Entries are dropped when their stored result
+ * goes away. A sheet switch needs no invalidation: the selected sheet is part of the
+ * key, so the switched upload simply asks for a different entry, and switching back
+ * finds the earlier result again.
+ */
+@Service
+public class ComparisonResultCache {
+
+    @Autowired
+    private StorageService storageService;
+
+    private final Map<List<Object>, CachedResult> results = new HashMap<>();
+
+    @PostConstruct
+    public void registerStorageListener() {
+        storageService.addRemovalListener((key, value, cause) -> {
+            if (value instanceof ComparisonRows && cause != StorageService.RemovalCause.REPLACED) {
+                invalidateResult(key);
+            }
+        });
+    }
+
+    /**
+     * The cache key for a comparison, or {@code null} if an upload has no content
+     * hash to identify it by.
+     */
+    public static List<Object> key(UploadedFile file1, List<String> columns1, UploadedFile file2,
+                                   List<String> columns2, JoinMode joinMode, List<ColumnPair> columnMapping) {
+        if (file1.getContent() == null || file2.getContent() == null) {
+            return null;
+        }
+        List<String> mapping = new ArrayList<>();
+        if (columnMapping != null) {
+            for (ColumnPair pair : columnMapping) {
+                mapping.add(pair.getColumn1());
+                mapping.add(pair.getColumn2());
+            }
+        }
+        return Arrays.asList(file1.getContent().getContentHash(), file1.getData().getSelectedSheet(),
+                new ArrayList<>(columns1), file2.getContent().getContentHash(), file2.getData().getSelectedSheet(),
+                new ArrayList<>(columns2), joinMode, mapping);
+    }
+
+    /**
+     * Returns the cached result for the key if both of its tables are still stored.
+     */
+    public CachedResult get(List<Object> key) {
+        CachedResult result;
+        synchronized (this) {
+            result = results.get(key);
+        }
+        if (result == null) {
+            return null;
+        }
+        // Reading both tables also marks them as recently used in storage
+        if (storageService.get(result.resultId + "_matched", ComparisonRows.class) == null
+                || storageService.get(result.resultId + "_mismatched", ComparisonRows.class) == null) {
+            invalidateResult(result.resultId + "_matched");
+            return null;
+        }
+        synchronized (this) {
+            return results.get(key) == result ? result : null;
+        }
+    }
+
+    public synchronized void put(List<Object> key, String resultId, int matchedCount, int mismatchedCount,
+                                 Map<String, Integer> columnChanges) {
+        results.put(key, new CachedResult(resultId, matchedCount, mismatchedCount, columnChanges));
+    }
+
+    private synchronized void invalidateResult(String storageKey) {
+        int separator = storageKey.lastIndexOf('_');
+        if (separator < 0) {
+            return;
+        }
+        String resultId = storageKey.substring(0, separator);
+        results.values().removeIf(result -> result.resultId.equals(resultId));
+    }
+
+    public static class CachedResult {
+        private final String resultId;
+        private final int matchedCount;
+        private final int mismatchedCount;
+        private final Map<String, Integer> columnChanges;
+
+        CachedResult(String resultId, int matchedCount, int mismatchedCount, Map<String, Integer> columnChanges) {
+            this.resultId = resultId;
+            this.matchedCount = matchedCount;
+            this.mismatchedCount = mismatchedCount;
+            this.columnChanges = columnChanges;
+        }
+
+        public String getResultId() {
+            return resultId;
+        }
+
+        public int getMatchedCount() {
+            return matchedCount;
+        }
+
+        public int getMismatchedCount() {
+            return mismatchedCount;
+        }
+
+        public Map<String, Integer> getColumnChanges() {
+            return columnChanges;
+        }
+    }
+}
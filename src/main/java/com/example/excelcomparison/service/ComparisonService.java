@@ -1,255 +1,893 @@
 package com.example.excelcomparison.service;
 
+import com.example.excelcomparison.model.ColumnPair;
+import com.example.excelcomparison.model.ComparisonJob.Phase;
+import com.example.excelcomparison.model.ComparisonRows;
 import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.model.JoinMode;
+import com.example.excelcomparison.model.SheetTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class ComparisonService {
 
+    // Result rows built between progress updates
+    private static final int PROGRESS_INTERVAL = 10000;
+
+    // Status codes of every result layout; ROW_CHANGED only occurs in row diffs
+    private static final int MATCHED = 0;
+    private static final int ONLY_LEFT = 1;
+    private static final int ONLY_RIGHT = 2;
+    private static final int ROW_CHANGED = 3;
+
+    private static final Logger log = LoggerFactory.getLogger(ComparisonService.class);
+
+    @Autowired
+    private ParallelComparisonEngine comparisonEngine;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    @Value("${comparison.missing-keys.false-positive-rate:0.01}")
+    private double missingKeysFalsePositiveRate;
+
+    @Value("${comparison.fuzzy.threshold:0.8}")
+    private double fuzzyThreshold;
+
+    @Value("${comparison.fuzzy.normalization:nfkc,case,punctuation,whitespace}")
+    private String[] fuzzyNormalization;
+
+    private KeyNormalizer fuzzyNormalizer;
+
+    @Value("${comparison.sort-merge.run-size:500000}")
+    private int sortMergeRunSize;
+
+    @Value("${comparison.sort-merge.directory:}")
+    private String sortMergeDirectory;
+
+    // Bad fuzzy settings fail at startup rather than on the first fuzzy comparison
+    @PostConstruct
+    public void initFuzzyMatching() {
+        if (!(fuzzyThreshold > 0 && fuzzyThreshold <= 1)) {
+            throw new IllegalStateException("comparison.fuzzy.threshold must be in (0, 1]: " + fuzzyThreshold);
+        }
+        fuzzyNormalizer = KeyNormalizer.of(fuzzyNormalization);
+    }
+
+    /**
+     * Whether the comparison reports full row data and so needs every column of
+     * both tables, not just the key columns. True for {@code ALL_ROWS}, and for
+     * {@code DISTINCT_KEYS} when either key column holds comma-separated values.
+     */
+    public boolean needsRowData(ExcelData file1, ExcelData file2, String column1, String column2, JoinMode joinMode) {
+        return needsRowData(file1, file2, Collections.singletonList(column1), Collections.singletonList(column2),
+                joinMode);
+    }
+
+    /**
+     * As {@link #needsRowData(ExcelData, ExcelData, String, String, JoinMode)} for
+     * a key of one or more column pairs. Composite keys never split commas, so only
+     * {@code ALL_ROWS} needs row data for them.
+     */
+    public boolean needsRowData(ExcelData file1, ExcelData file2, List<String> columns1, List<String> columns2,
+                                JoinMode joinMode) {
+        if (joinMode == JoinMode.ALL_ROWS) {
+            return true;
+        }
+        // ROW_DIFF callers load the mapped columns themselves, see resolveColumnMapping
+        if (joinMode == JoinMode.MISSING_KEYS || joinMode == JoinMode.SORT_MERGE || joinMode == JoinMode.FUZZY
+                || joinMode == JoinMode.ROW_DIFF || columns1.size() > 1) {
+            return false;
+        }
+        return ColumnScan.isMultiValued(file1.getTable(), columns1.get(0))
+                || ColumnScan.isMultiValued(file2.getTable(), columns2.get(0));
+    }
+
     public ComparisonResult compareColumns(ExcelData file1, ExcelData file2, String column1, String column2) {
-        // Validation
+        return compareColumns(file1, file2, column1, column2, JoinMode.DISTINCT_KEYS);
+    }
+
+    public ComparisonResult compareColumns(ExcelData file1, ExcelData file2, String column1, String column2,
+                                           JoinMode joinMode) {
+        return compareColumns(file1, file2, column1, column2, joinMode, ComparisonProgress.NONE);
+    }
+
+    /**
+     * Compares on a key made of several column pairs: {@code columns1.get(i)} of the
+     * first file is matched against {@code columns2.get(i)} of the second. A single
+     * pair behaves exactly like {@link #compareColumns(ExcelData, ExcelData, String,
+     * String, JoinMode, ComparisonProgress)}.
+     */
+    public ComparisonResult compareColumns(ExcelData file1, ExcelData file2, List<String> columns1,
+                                           List<String> columns2, JoinMode joinMode, ComparisonProgress progress) {
+        if (columns1 == null || columns2 == null || columns1.isEmpty() || columns1.size() != columns2.size()) {
+            throw new IllegalArgumentException("Each key column of the first file needs a column of the second file");
+        }
+        if (columns1.size() == 1) {
+            return compareColumns(file1, file2, columns1.get(0), columns2.get(0), joinMode, progress);
+        }
         if (file1 == null || file2 == null) {
             throw new IllegalArgumentException("Both files must be provided for comparison");
         }
-        if (column1 == null || column1.trim().isEmpty() || column2 == null || column2.trim().isEmpty()) {
-            throw new IllegalArgumentException("Both column names must be provided");
+        if (joinMode == JoinMode.SORT_MERGE || joinMode == JoinMode.FUZZY || joinMode == JoinMode.ROW_DIFF) {
+            throw new IllegalArgumentException(joinMode + " comparison supports a single key column");
+        }
+        for (int i = 0; i < columns1.size(); i++) {
+            requireColumn(file1, columns1.get(i), "first");
+            requireColumn(file2, columns2.get(i), "second");
         }
         
-        // Check if columns contain comma-separated values
-        boolean hasCommaValues1 = hasCommaSeparatedValues(file1, column1);
-        boolean hasCommaValues2 = hasCommaSeparatedValues(file2, column2);
-        
-        // Debug logging
-        System.out.println("Column1: " + column1 + " from " + file1.getSelectedSheet() + ", hasCommaValues: " + hasCommaValues1);
-        System.out.println("Column2: " + column2 + " from " + file2.getSelectedSheet() + ", hasCommaValues: " + hasCommaValues2);
-        System.out.println("File1 rows: " + (file1.getRows() != null ? file1.getRows().size() : 0));
-        System.out.println("File2 rows: " + (file2.getRows() != null ? file2.getRows().size() : 0));
-        System.out.println("Cross-sheet comparison: " + file1.getSelectedSheet() + " -> " + file2.getSelectedSheet());
+        long start = System.nanoTime();
+        progress.update(Phase.INDEXING, 0);
+        TupleIndex index1 = TupleIndex.build(file1.getTable(), columns1);
+        TupleIndex index2 = TupleIndex.build(file2.getTable(), columns2);
+        progress.update(Phase.INDEXING, index1.groupCount() + index2.groupCount());
         
-        // If either column has comma-separated values, use full row comparison
-        if (hasCommaValues1 || hasCommaValues2) {
-            System.out.println("Using full row comparison");
-            ComparisonResult result = compareWithFullRowData(file1, file2, column1, column2);
-            System.out.println("Full row comparison - Matched: " + result.getMatchedRows().size() + ", Mismatched: " + result.getMismatchedRows().size());
-            return result;
+        String strategy;
+        ComparisonResult result;
+        if (joinMode == JoinMode.ALL_ROWS) {
+            strategy = "composite-all-rows";
+            result = compareCompositeAllRows(file1, file2, columns1, columns2, index1, index2, progress);
+        } else {
+            strategy = joinMode == JoinMode.MISSING_KEYS ? "composite-missing-keys" : "composite";
+            result = compareCompositeKeys(file1, file2, columns1, columns2, index1, index2,
+                    joinMode == JoinMode.MISSING_KEYS, progress);
         }
         
-        // Otherwise, use cross-sheet value comparison
-        System.out.println("Using cross-sheet value comparison");
-        ComparisonResult result = compareWithCrossSheetValues(file1, file2, column1, column2);
-        System.out.println("Cross-sheet comparison - Matched: " + result.getMatchedRows().size() + ", Mismatched: " + result.getMismatchedRows().size());
+        recordComparison(strategy, start, columns1, columns2, file1, file2, result);
         return result;
     }
-    
-    private boolean hasCommaSeparatedValues(ExcelData data, String columnName) {
-        if (data == null || columnName == null || !data.getHeaders().contains(columnName)) {
-            return false;
+
+    /**
+     * The columns a row diff compares: {@code mapping} checked against both files'
+     * headers, or, when it is empty, every header the files share other than the
+     * key columns.
+     */
+    public List<ColumnPair> resolveColumnMapping(ExcelData file1, ExcelData file2, String column1, String column2,
+                                                 List<ColumnPair> mapping) {
+        List<String> headers1 = file1.getHeaders() != null ? file1.getHeaders() : Collections.emptyList();
+        List<String> headers2 = file2.getHeaders() != null ? file2.getHeaders() : Collections.emptyList();
+        List<ColumnPair> resolved = new ArrayList<>();
+        if (mapping != null && !mapping.isEmpty()) {
+            for (ColumnPair pair : mapping) {
+                requireColumn(file1, pair.getColumn1(), "first");
+                requireColumn(file2, pair.getColumn2(), "second");
+                resolved.add(pair);
+            }
+        } else {
+            for (String header : headers1) {
+                if (!header.equals(column1) && !header.equals(column2) && headers2.contains(header)) {
+                    resolved.add(new ColumnPair(header, header));
+                }
+            }
+        }
+        if (resolved.isEmpty()) {
+            throw new IllegalArgumentException("No columns to compare: give a column mapping or use sheets with shared headers");
         }
+        return resolved;
+    }
+
+    /**
+     * Joins on the key columns and, in the same pass over the matched pairs, compares
+     * each mapped cell. Identical rows are matched; changed rows and keys found on
+     * one side only are mismatched. When a key repeats, its last row is compared.
+     * Both tables must hold the key and mapped columns.
+     *
+     * @param mapping as for {@link #resolveColumnMapping}
+     */
+    public ComparisonResult compareRowDiff(ExcelData file1, ExcelData file2, String column1, String column2,
+                                           List<ColumnPair> mapping, ComparisonProgress progress) {
+        long start = System.nanoTime();
+        requireColumn(file1, column1, "first");
+        requireColumn(file2, column2, "second");
+        List<ColumnPair> pairs = resolveColumnMapping(file1, file2, column1, column2, mapping);
+        SheetTable table1 = file1.getTable();
+        SheetTable table2 = file2.getTable();
+        int[] mapped1 = new int[pairs.size()];
+        int[] mapped2 = new int[pairs.size()];
+        String[] labels = new String[pairs.size()];
+        for (int i = 0; i < pairs.size(); i++) {
+            ColumnPair pair = pairs.get(i);
+            mapped1[i] = table1.columnIndex(pair.getColumn1());
+            mapped2[i] = table2.columnIndex(pair.getColumn2());
+            labels[i] = pair.getColumn1().equals(pair.getColumn2())
+                    ? pair.getColumn1() : pair.getColumn1() + " / " + pair.getColumn2();
+        }
+        
+        progress.update(Phase.INDEXING, 0);
+        IntArrayList rows1 = new IntArrayList();
+        IntArrayList rows2 = new IntArrayList();
+        List<String> keys1 = rowKeys(table1, column1, rows1);
+        List<String> keys2 = rowKeys(table2, column2, rows2);
+        progress.update(Phase.JOINING, keys1.size() + keys2.size());
+        ParallelComparisonEngine.KeyJoin<String> join = comparisonEngine.join(
+                keys1, rows1.toArray(), keys2, rows2.toArray(), progress);
         
-        for (Map<String, Object> row : data.getRows()) {
-            if (row != null) {
-                Object value = row.get(columnName);
-                if (value != null && value.toString().contains(",")) {
-                    return true;
+        // Changed cells are flagged once here, as a bitset per row, and pages render
+        // from the bitsets
+        progress.update(Phase.MATERIALIZING, 0);
+        String[] statuses = {"MATCHED", "ONLY IN " + file1.getSelectedSheet().toUpperCase(),
+                "ONLY IN " + file2.getSelectedSheet().toUpperCase(), "CHANGED"};
+        ComparisonRows.Builder matched = rowDiffLayout(file1, file2, column1, column2, mapped1, mapped2, labels, statuses);
+        ComparisonRows.Builder mismatched = rowDiffLayout(file1, file2, column1, column2, mapped1, mapped2, labels, statuses)
+                .trackChanges(labels.length);
+        int[] changedPerColumn = new int[pairs.size()];
+        long[] mask = new long[(pairs.size() + 63) >>> 6];
+        for (int i = 0; i < join.matchedCount(); i++) {
+            int left = join.matchedLeftRow(i);
+            int right = join.matchedRightRow(i);
+            boolean changed = false;
+            Arrays.fill(mask, 0L);
+            for (int c = 0; c < pairs.size(); c++) {
+                if (!table1.getValue(mapped1[c], left).equals(table2.getValue(mapped2[c], right))) {
+                    changedPerColumn[c]++;
+                    mask[c >>> 6] |= 1L << c;
+                    changed = true;
                 }
             }
+            if (changed) {
+                mismatched.add(null, left, right, ROW_CHANGED, mask);
+            } else {
+                matched.add(null, left, right, MATCHED);
+            }
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
-        return false;
+        for (int i = 0; i < join.onlyLeftCount(); i++) {
+            mismatched.add(null, join.onlyLeftRow(i), ComparisonRows.NONE, ONLY_LEFT);
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
+        }
+        for (int i = 0; i < join.onlyRightCount(); i++) {
+            mismatched.add(null, ComparisonRows.NONE, join.onlyRightRow(i), ONLY_RIGHT);
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
+        }
+        
+        Map<String, Integer> columnChanges = new LinkedHashMap<>();
+        for (int c = 0; c < pairs.size(); c++) {
+            columnChanges.put(labels[c], changedPerColumn[c]);
+        }
+        ComparisonResult result = new ComparisonResult(matched.build(), mismatched.build(), columnChanges);
+        recordComparison("row-diff", start, column1, column2, file1, file2, result);
+        return result;
     }
     
-    private ComparisonResult compareWithCrossSheetValues(ExcelData file1, ExcelData file2, String column1, String column2) {
-        List<Map<String, Object>> matchedRows = new ArrayList<>();
-        List<Map<String, Object>> mismatchedRows = new ArrayList<>();
-        
-        // Get only values from selected columns
-        Set<String> file1Values = getColumnValues(file1, column1);
-        Set<String> file2Values = getColumnValues(file2, column2);
+    // Keys, the names of the changed columns, one "old → new" cell per mapped column, status
+    private static ComparisonRows.Builder rowDiffLayout(ExcelData file1, ExcelData file2, String column1, String column2,
+                                                        int[] mapped1, int[] mapped2, String[] labels,
+                                                        String[] statuses) {
+        SheetTable table1 = file1.getTable();
+        SheetTable table2 = file2.getTable();
+        int key1 = table1.columnIndex(column1);
+        int key2 = table2.columnIndex(column2);
+        ComparisonRows.Builder rows = ComparisonRows.builder(statuses)
+                .retains(tableBytes(table1, table2))
+                .column(column1 + " (" + file1.getSelectedSheet() + ")", (r, i) -> r.getLeftRow(i) != ComparisonRows.NONE
+                        ? table1.getValue(key1, r.getLeftRow(i)).trim() : "NOT FOUND")
+                .column(column2 + " (" + file2.getSelectedSheet() + ")", (r, i) -> r.getRightRow(i) != ComparisonRows.NONE
+                        ? table2.getValue(key2, r.getRightRow(i)).trim() : "NOT FOUND")
+                .column("Changed Columns", (r, i) -> {
+                    StringBuilder changed = new StringBuilder();
+                    for (int c = 0; c < labels.length; c++) {
+                        if (r.isChanged(i, c)) {
+                            changed.append(changed.length() > 0 ? ", " : "").append(labels[c]);
+                        }
+                    }
+                    return changed.toString();
+                });
+        for (int c = 0; c < labels.length; c++) {
+            int column = c;
+            rows.column(labels[c], (r, i) -> r.isChanged(i, column)
+                    ? table1.getValue(mapped1[column], r.getLeftRow(i)) + " → "
+                      + table2.getValue(mapped2[column], r.getRightRow(i))
+                    : "");
+        }
+        return rows.column("Status", ComparisonRows::getStatus);
+    }
+    
+    // Trimmed, non-empty whole-cell key of each row, with the row in rows
+    private static List<String> rowKeys(SheetTable table, String columnName, IntArrayList rows) {
+        List<String> keys = new ArrayList<>();
+        int[] codes = table.getColumnCodes(table.columnIndex(columnName));
+        String[] keysByCode = new String[table.getPool().size()];
+        for (int row = 0; row < codes.length; row++) {
+            String key = keysByCode[codes[row]];
+            if (key == null) {
+                key = table.getPool().get(codes[row]).trim();
+                keysByCode[codes[row]] = key;
+            }
+            if (!key.isEmpty()) {
+                keys.add(key);
+                rows.add(row);
+            }
+        }
+        return keys;
+    }
+
+    public ComparisonResult compareColumns(ExcelData file1, ExcelData file2, String column1, String column2,
+                                           JoinMode joinMode, ComparisonProgress progress) {
+        // Validation
+        if (file1 == null || file2 == null) {
+            throw new IllegalArgumentException("Both files must be provided for comparison");
+        }
+        if (column1 == null || column1.trim().isEmpty() || column2 == null || column2.trim().isEmpty()) {
+            throw new IllegalArgumentException("Both column names must be provided");
+        }
         
         // Check if columns exist in files
-        if (file1Values.isEmpty() && !file1.getHeaders().contains(column1)) {
+        if (file1.getHeaders() == null || !file1.getHeaders().contains(column1)) {
             throw new IllegalArgumentException("Column '" + column1 + "' not found in first file");
         }
-        if (file2Values.isEmpty() && !file2.getHeaders().contains(column2)) {
+        if (file2.getHeaders() == null || !file2.getHeaders().contains(column2)) {
             throw new IllegalArgumentException("Column '" + column2 + "' not found in second file");
         }
         
-        // Find common values (matched)
-        Set<String> commonValues = new HashSet<>(file1Values);
-        commonValues.retainAll(file2Values);
+        long start = System.nanoTime();
+        if (joinMode == JoinMode.SORT_MERGE) {
+            // Streams the keys through sorted runs instead of scanning them onto the heap
+            ComparisonResult result = compareSortMerge(file1, file2, column1, column2, progress);
+            recordComparison("sort-merge", start, column1, column2, file1, file2, result);
+            return result;
+        }
+        if (joinMode == JoinMode.ROW_DIFF) {
+            return compareRowDiff(file1, file2, column1, column2, null, progress);
+        }
+        if (joinMode == JoinMode.FUZZY) {
+            // Nearest key by trigram similarity, found through a prefix-filtered index
+            ComparisonResult result = compareFuzzy(file1, file2, column1, column2, progress);
+            recordComparison("fuzzy", start, column1, column2, file1, file2, result);
+            return result;
+        }
+        
+        if (joinMode == JoinMode.MISSING_KEYS) {
+            // Only the first column's keys are reported, checked against a filter over the second
+            ComparisonResult result = compareMissingKeys(file1, file2, column1, column2, progress);
+            recordComparison("missing-keys", start, column1, column2, file1, file2, result);
+            return result;
+        }
+        
+        // One pass per column collects the keys and detects comma-separated values
+        progress.update(Phase.INDEXING, 0);
+        ColumnScan scan1 = ColumnScan.scan(file1.getTable(), column1);
+        ColumnScan scan2 = ColumnScan.scan(file2.getTable(), column2);
+        progress.update(Phase.INDEXING, scan1.getKeys().size() + scan2.getKeys().size());
+        
+        String strategy;
+        ComparisonResult result;
+        if (joinMode == JoinMode.ALL_ROWS) {
+            // Every matching row pair, whatever the cell format
+            strategy = "all-rows";
+            result = compareWithAllRows(file1, file2, scan1, scan2, progress);
+        } else if (scan1.isMultiValued() || scan2.isMultiValued()) {
+            // If either column has comma-separated values, use full row comparison
+            strategy = "full-row";
+            result = compareWithFullRowData(file1, file2, scan1, scan2, progress);
+        } else {
+            // Otherwise, use cross-sheet value comparison
+            strategy = "cross-sheet";
+            result = compareWithCrossSheetValues(file1, file2, column1, column2, scan1, scan2, progress);
+        }
         
-        // Find values only in file1 or only in file2 (mismatched)
-        Set<String> onlyInFile1 = new HashSet<>(file1Values);
-        onlyInFile1.removeAll(file2Values);
+        recordComparison(strategy, start, column1, column2, file1, file2, result);
+        return result;
+    }
+    
+    private void recordComparison(String strategy, long start, Object column1, Object column2,
+                                  ExcelData file1, ExcelData file2, ComparisonResult result) {
+        long elapsed = System.nanoTime() - start;
+        pipelineMetrics.recordComparison(strategy, elapsed, result.getMatchedCount(), result.getMismatchedCount());
+        log.debug("Compared {} ({}) with {} ({}) using {} comparison in {} ms: {} matched, {} mismatched",
+                column1, file1.getSelectedSheet(), column2, file2.getSelectedSheet(), strategy,
+                TimeUnit.NANOSECONDS.toMillis(elapsed), result.getMatchedCount(), result.getMismatchedCount());
+    }
+    
+    private ComparisonResult compareWithCrossSheetValues(ExcelData file1, ExcelData file2, String column1, String column2,
+                                                         ColumnScan scan1, ColumnScan scan2,
+                                                         ComparisonProgress progress) {
+        String[] statuses = onlyInStatuses(file1, file2);
+        ComparisonRows.Builder matched = keyLayout(file1, file2, column1, column2, statuses);
+        ComparisonRows.Builder mismatched = keyLayout(file1, file2, column1, column2, statuses);
         
-        Set<String> onlyInFile2 = new HashSet<>(file2Values);
-        onlyInFile2.removeAll(file1Values);
+        // Matched and only-in-one-file values in one partitioned pass
+        progress.update(Phase.JOINING, scan1.getDistinctKeys().size() + scan2.getDistinctKeys().size());
+        ParallelComparisonEngine.KeyJoin<String> join = comparisonEngine.join(
+                scan1.getDistinctKeys(), null, scan2.getDistinctKeys(), null, progress);
+        progress.update(Phase.MATERIALIZING, 0);
         
-        // Create matched rows with cross-sheet information
-        for (String value : commonValues) {
-            Map<String, Object> matchedRow = new LinkedHashMap<>();
-            matchedRow.put(column1 + " (" + file1.getSelectedSheet() + ")", value);
-            matchedRow.put(column2 + " (" + file2.getSelectedSheet() + ")", value);
-            matchedRow.put("Status", "MATCHED");
-            matchedRows.add(matchedRow);
+        for (int i = 0; i < join.matchedCount(); i++) {
+            matched.add(join.matchedKey(i), ComparisonRows.NONE, ComparisonRows.NONE, MATCHED);
+            reportProgress(progress, matched.getRowCount());
         }
         
-        // Create mismatched rows (values only in file1)
-        for (String value : onlyInFile1) {
-            Map<String, Object> mismatchedRow = new LinkedHashMap<>();
-            mismatchedRow.put(column1 + " (" + file1.getSelectedSheet() + ")", value);
-            mismatchedRow.put(column2 + " (" + file2.getSelectedSheet() + ")", "NOT FOUND");
-            mismatchedRow.put("Status", "ONLY IN " + file1.getSelectedSheet().toUpperCase());
-            mismatchedRows.add(mismatchedRow);
+        // Values only in file1
+        for (int i = 0; i < join.onlyLeftCount(); i++) {
+            mismatched.add(join.onlyLeftKey(i), ComparisonRows.NONE, ComparisonRows.NONE, ONLY_LEFT);
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
         
-        // Create mismatched rows (values only in file2)
-        for (String value : onlyInFile2) {
-            Map<String, Object> mismatchedRow = new LinkedHashMap<>();
-            mismatchedRow.put(column1 + " (" + file1.getSelectedSheet() + ")", "NOT FOUND");
-            mismatchedRow.put(column2 + " (" + file2.getSelectedSheet() + ")", value);
-            mismatchedRow.put("Status", "ONLY IN " + file2.getSelectedSheet().toUpperCase());
-            mismatchedRows.add(mismatchedRow);
+        // Values only in file2
+        for (int i = 0; i < join.onlyRightCount(); i++) {
+            mismatched.add(join.onlyRightKey(i), ComparisonRows.NONE, ComparisonRows.NONE, ONLY_RIGHT);
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
         
-        return new ComparisonResult(matchedRows, mismatchedRows);
+        return new ComparisonResult(matched.build(), mismatched.build());
     }
     
-    private ComparisonResult compareWithFullRowData(ExcelData file1, ExcelData file2, String column1, String column2) {
-        List<Map<String, Object>> matchedRows = new ArrayList<>();
-        List<Map<String, Object>> mismatchedRows = new ArrayList<>();
+    private static String[] onlyInStatuses(ExcelData file1, ExcelData file2) {
+        return new String[]{"MATCHED", "ONLY IN " + file1.getSelectedSheet().toUpperCase(),
+                "ONLY IN " + file2.getSelectedSheet().toUpperCase()};
+    }
+    
+    // The stored key under each column it was found in, "NOT FOUND" under the other
+    private static ComparisonRows.Builder keyLayout(ExcelData file1, ExcelData file2, String column1, String column2,
+                                                    String[] statuses) {
+        return ComparisonRows.builder(statuses)
+                .column(column1 + " (" + file1.getSelectedSheet() + ")",
+                        (r, i) -> r.getStatusCode(i) != ONLY_RIGHT ? r.getKey(i) : "NOT FOUND")
+                .column(column2 + " (" + file2.getSelectedSheet() + ")",
+                        (r, i) -> r.getStatusCode(i) != ONLY_LEFT ? r.getKey(i) : "NOT FOUND")
+                .column("Status", ComparisonRows::getStatus);
+    }
+    
+    // Both columns are read once per dictionary code; no per-row keys are collected
+    private ComparisonResult compareMissingKeys(ExcelData file1, ExcelData file2, String column1, String column2,
+                                                ComparisonProgress progress) {
+        String[] statuses = {"MATCHED", "MISSING FROM " + file2.getSelectedSheet().toUpperCase()};
+        ComparisonRows.Builder matched = keyLayout(file1, file2, column1, column2, statuses);
+        ComparisonRows.Builder mismatched = keyLayout(file1, file2, column1, column2, statuses);
         
-        Map<String, Map<String, Object>> file1Map = createExpandedColumnValueMap(file1, column1);
-        Map<String, Map<String, Object>> file2Map = createExpandedColumnValueMap(file2, column2);
+        progress.update(Phase.INDEXING, 0);
+        List<String> keys1 = ColumnScan.distinctKeys(file1.getTable(), column1);
+        List<String> keys2 = ColumnScan.distinctKeys(file2.getTable(), column2);
+        progress.update(Phase.JOINING, keys2.size());
+        KeyFilter reference = KeyFilter.build(keys2, missingKeysFalsePositiveRate);
+        progress.update(Phase.MATERIALIZING, 0);
         
-        // Check if columns exist in files
-        if (file1Map.isEmpty() && !file1.getHeaders().contains(column1)) {
-            throw new IllegalArgumentException("Column '" + column1 + "' not found in first file");
-        }
-        if (file2Map.isEmpty() && !file2.getHeaders().contains(column2)) {
-            throw new IllegalArgumentException("Column '" + column2 + "' not found in second file");
+        for (String value : keys1) {
+            if (reference.contains(value)) {
+                matched.add(value, ComparisonRows.NONE, ComparisonRows.NONE, MATCHED);
+            } else {
+                mismatched.add(value, ComparisonRows.NONE, ComparisonRows.NONE, ONLY_LEFT);
+            }
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
         
-        Set<String> allKeys = new HashSet<>();
-        allKeys.addAll(file1Map.keySet());
-        allKeys.addAll(file2Map.keySet());
+        log.debug("Checked {} keys against {} reference keys: {} needed an exact lookup, {} false positives",
+                keys1.size(), reference.size(), reference.getCandidates(), reference.getFalsePositives());
+        return new ComparisonResult(matched.build(), mismatched.build());
+    }
+    
+    /**
+     * Pairs each distinct cell value of the first column with its most similar
+     * value in the second. Cells are compared whole, since names often contain
+     * commas. Rows point into the two distinct value lists, and the similarity is
+     * worked out again for the rows a page renders.
+     */
+    private ComparisonResult compareFuzzy(ExcelData file1, ExcelData file2, String column1, String column2,
+                                          ComparisonProgress progress) {
+        progress.update(Phase.INDEXING, 0);
+        List<String> keys1 = distinctValues(file1.getTable(), column1);
+        List<String> keys2 = distinctValues(file2.getTable(), column2);
+        String[] statuses = onlyInStatuses(file1, file2);
+        ComparisonRows.Builder matched = fuzzyLayout(file1, file2, column1, column2, keys1, keys2, statuses);
+        ComparisonRows.Builder mismatched = fuzzyLayout(file1, file2, column1, column2, keys1, keys2, statuses);
+        
+        progress.update(Phase.JOINING, keys1.size() + keys2.size());
+        FuzzyKeyIndex index = FuzzyKeyIndex.build(keys2, fuzzyNormalizer, fuzzyThreshold);
+        ParallelComparisonEngine.SimilarityJoin join = comparisonEngine.joinSimilar(keys1, index, progress);
+        progress.update(Phase.MATERIALIZING, 0);
         
-        for (String key : allKeys) {
-            Map<String, Object> row1 = file1Map.get(key);
-            Map<String, Object> row2 = file2Map.get(key);
-            
-            if (row1 != null && row2 != null) {
-                Map<String, Object> matchedRow = new LinkedHashMap<>();
-                matchedRow.put("Comparison_Value", key);
-                matchedRow.put("File1_Row_Data", formatRowData(row1));
-                matchedRow.put("File2_Row_Data", formatRowData(row2));
-                matchedRow.put("Status", "MATCHED");
-                matchedRows.add(matchedRow);
+        boolean[] matched2 = new boolean[keys2.size()];
+        for (int i = 0; i < keys1.size(); i++) {
+            int match = join.match(i);
+            if (match >= 0) {
+                matched2[match] = true;
+                matched.add(null, i, match, MATCHED);
             } else {
-                Map<String, Object> mismatchedRow = new LinkedHashMap<>();
-                mismatchedRow.put("Comparison_Value", key);
-                mismatchedRow.put("File1_Row_Data", row1 != null ? formatRowData(row1) : "NOT FOUND");
-                mismatchedRow.put("File2_Row_Data", row2 != null ? formatRowData(row2) : "NOT FOUND");
-                mismatchedRow.put("Status", "MISMATCHED");
-                mismatchedRows.add(mismatchedRow);
+                mismatched.add(null, i, ComparisonRows.NONE, ONLY_LEFT);
+            }
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
+        }
+        for (int i = 0; i < keys2.size(); i++) {
+            if (matched2[i]) {
+                continue;
             }
+            mismatched.add(null, ComparisonRows.NONE, i, ONLY_RIGHT);
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
         
-        return new ComparisonResult(matchedRows, mismatchedRows);
+        log.debug("Fuzzy matched {} keys against {}: {} candidate pairs verified of {}",
+                keys1.size(), keys2.size(), join.candidates(), (long) keys1.size() * keys2.size());
+        return new ComparisonResult(matched.build(), mismatched.build());
+    }
+    
+    private ComparisonRows.Builder fuzzyLayout(ExcelData file1, ExcelData file2, String column1, String column2,
+                                               List<String> keys1, List<String> keys2, String[] statuses) {
+        KeyNormalizer normalizer = fuzzyNormalizer;
+        return ComparisonRows.builder(statuses)
+                .retains(listBytes(keys1) + listBytes(keys2))
+                .column(column1 + " (" + file1.getSelectedSheet() + ")", (r, i) -> r.getLeftRow(i) != ComparisonRows.NONE
+                        ? keys1.get(r.getLeftRow(i)) : "NOT FOUND")
+                .column(column2 + " (" + file2.getSelectedSheet() + ")", (r, i) -> r.getRightRow(i) != ComparisonRows.NONE
+                        ? keys2.get(r.getRightRow(i)) : "NOT FOUND")
+                .column("Similarity", (r, i) -> r.getStatusCode(i) == MATCHED
+                        ? String.format(Locale.ROOT, "%.2f", FuzzyKeyIndex.similarity(
+                                keys1.get(r.getLeftRow(i)), keys2.get(r.getRightRow(i)), normalizer))
+                        : "")
+                .column("Status", ComparisonRows::getStatus);
     }
     
-    private Map<String, Map<String, Object>> createExpandedColumnValueMap(ExcelData data, String columnName) {
-        Map<String, Map<String, Object>> resultMap = new HashMap<>();
+    // Non-empty trimmed cell values in first-seen order, visited once per dictionary code;
+    // only trimmed values can repeat, so they alone call for a dedupe
+    private static List<String> distinctValues(SheetTable table, String columnName) {
+        List<String> values = new ArrayList<>();
+        int column = table != null ? table.columnIndex(columnName) : -1;
+        if (column < 0) {
+            return values;
+        }
+        boolean trimmed = false;
+        boolean[] visited = new boolean[table.getPool().size()];
+        for (int code : table.getColumnCodes(column)) {
+            if (!visited[code]) {
+                visited[code] = true;
+                String cell = table.getPool().get(code);
+                String value = cell.trim();
+                if (!value.isEmpty()) {
+                    values.add(value);
+                    trimmed |= value != cell;
+                }
+            }
+        }
+        return trimmed ? ColumnScan.unique(values) : values;
+    }
+    
+    /**
+     * Sorts each column's keys into runs on disk, then walks both sorted streams
+     * once: equal heads match and the smaller head is only on its side. Only one run
+     * per side and the two stream heads are held at a time.
+     */
+    private ComparisonResult compareSortMerge(ExcelData file1, ExcelData file2, String column1, String column2,
+                                              ComparisonProgress progress) {
+        String[] statuses = onlyInStatuses(file1, file2);
+        ComparisonRows.Builder matched = keyLayout(file1, file2, column1, column2, statuses);
+        ComparisonRows.Builder mismatched = keyLayout(file1, file2, column1, column2, statuses);
+        Path directory = sortMergeDirectory.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "excel-comparison-sort")
+                : Paths.get(sortMergeDirectory);
         
-        if (data == null || columnName == null || columnName.trim().isEmpty()) {
-            return resultMap;
+        try (ExternalKeySorter sorter1 = new ExternalKeySorter(directory, sortMergeRunSize);
+             ExternalKeySorter sorter2 = new ExternalKeySorter(directory, sortMergeRunSize)) {
+            progress.update(Phase.INDEXING, 0);
+            int keys = addKeys(sorter1, file1.getTable(), column1, progress, 0);
+            keys = addKeys(sorter2, file2.getTable(), column2, progress, keys);
+            
+            progress.update(Phase.JOINING, keys);
+            ExternalKeySorter.KeyCursor left = sorter1.sorted();
+            ExternalKeySorter.KeyCursor right = sorter2.sorted();
+            progress.update(Phase.MATERIALIZING, 0);
+            String key1 = left.next();
+            String key2 = right.next();
+            while (key1 != null || key2 != null) {
+                int order = key1 == null ? 1 : key2 == null ? -1 : key1.compareTo(key2);
+                if (order == 0) {
+                    matched.add(key1, ComparisonRows.NONE, ComparisonRows.NONE, MATCHED);
+                    key1 = left.next();
+                    key2 = right.next();
+                } else if (order < 0) {
+                    mismatched.add(key1, ComparisonRows.NONE, ComparisonRows.NONE, ONLY_LEFT);
+                    key1 = left.next();
+                } else {
+                    mismatched.add(key2, ComparisonRows.NONE, ComparisonRows.NONE, ONLY_RIGHT);
+                    key2 = right.next();
+                }
+                reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
+            }
+            log.debug("Sort-merge spilled {} and {} runs ({} and {} keys)", sorter1.runCount(), sorter2.runCount(),
+                    sorter1.spilledKeys(), sorter2.spilledKeys());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Sort-merge comparison failed: " + e.getMessage(), e);
+        }
+        return new ComparisonResult(matched.build(), mismatched.build());
+    }
+    
+    // Feeds every key of the column, splitting comma-separated cells as ColumnScan does
+    private static int addKeys(ExternalKeySorter sorter, SheetTable table, String columnName,
+                               ComparisonProgress progress, int added) throws IOException {
+        int column = table != null ? table.columnIndex(columnName) : -1;
+        if (column < 0) {
+            return added;
+        }
+        for (int code : table.getColumnCodes(column)) {
+            String value = table.getPool().get(code);
+            for (String token : value.indexOf(',') >= 0 ? value.split(",") : new String[]{value}) {
+                String key = token.trim();
+                if (!key.isEmpty()) {
+                    sorter.add(key);
+                    if (++added % PROGRESS_INTERVAL == 0) {
+                        progress.update(Phase.INDEXING, added);
+                    }
+                }
+            }
         }
+        return added;
+    }
+    
+    /**
+     * One row per distinct key tuple, laid out like the cross-sheet comparison with
+     * one column per key column. With {@code oneSided} only the first file's keys
+     * are reported. Rows point at the first table row of each tuple.
+     */
+    private ComparisonResult compareCompositeKeys(ExcelData file1, ExcelData file2, List<String> columns1,
+                                                  List<String> columns2, TupleIndex index1, TupleIndex index2,
+                                                  boolean oneSided, ComparisonProgress progress) {
+        String sheet1 = file1.getSelectedSheet();
+        String sheet2 = file2.getSelectedSheet();
+        String[] statuses = {"MATCHED", (oneSided ? "MISSING FROM " + sheet2 : "ONLY IN " + sheet1).toUpperCase(),
+                "ONLY IN " + sheet2.toUpperCase()};
+        ComparisonRows.Builder matched = compositeLayout(file1, file2, columns1, columns2, statuses);
+        ComparisonRows.Builder mismatched = compositeLayout(file1, file2, columns1, columns2, statuses);
         
-        if (data.getHeaders() == null || !data.getHeaders().contains(columnName)) {
-            return resultMap;
+        progress.update(Phase.JOINING, index1.groupCount() + index2.groupCount());
+        boolean[] matched2 = new boolean[index2.groupCount()];
+        progress.update(Phase.MATERIALIZING, 0);
+        for (int group = 0; group < index1.groupCount(); group++) {
+            int other = index2.find(index1, group);
+            if (other >= 0) {
+                matched2[other] = true;
+                matched.add(null, index1.firstRow(group), index2.firstRow(other), MATCHED);
+            } else {
+                mismatched.add(null, index1.firstRow(group), ComparisonRows.NONE, ONLY_LEFT);
+            }
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
         
-        if (data.getRows() == null) {
-            return resultMap;
+        if (!oneSided) {
+            for (int group = 0; group < index2.groupCount(); group++) {
+                if (matched2[group]) {
+                    continue;
+                }
+                mismatched.add(null, ComparisonRows.NONE, index2.firstRow(group), ONLY_RIGHT);
+                reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
+            }
         }
+        return new ComparisonResult(matched.build(), mismatched.build());
+    }
+    
+    // Each key column of the first file next to its pair in the second, then the status
+    private static ComparisonRows.Builder compositeLayout(ExcelData file1, ExcelData file2, List<String> columns1,
+                                                          List<String> columns2, String[] statuses) {
+        SheetTable table1 = file1.getTable();
+        SheetTable table2 = file2.getTable();
+        ComparisonRows.Builder rows = ComparisonRows.builder(statuses).retains(tableBytes(table1, table2));
+        for (int c = 0; c < columns1.size(); c++) {
+            int column1 = table1.columnIndex(columns1.get(c));
+            int column2 = table2.columnIndex(columns2.get(c));
+            rows.column(columns1.get(c) + " (" + file1.getSelectedSheet() + ")", (r, i) -> r.getLeftRow(i) != ComparisonRows.NONE
+                    ? table1.getValue(column1, r.getLeftRow(i)).trim() : "NOT FOUND");
+            rows.column(columns2.get(c) + " (" + file2.getSelectedSheet() + ")", (r, i) -> r.getRightRow(i) != ComparisonRows.NONE
+                    ? table2.getValue(column2, r.getRightRow(i)).trim() : "NOT FOUND");
+        }
+        return rows.column("Status", ComparisonRows::getStatus);
+    }
+    
+    /**
+     * Every matching row pair per key tuple, with full row data like {@code ALL_ROWS}
+     * on a single column.
+     */
+    private ComparisonResult compareCompositeAllRows(ExcelData file1, ExcelData file2, List<String> columns1,
+                                                     List<String> columns2, TupleIndex index1, TupleIndex index2,
+                                                     ComparisonProgress progress) {
+        SheetTable table1 = file1.getTable();
+        SheetTable table2 = file2.getTable();
+        int[] keys1 = columnIndexes(table1, columns1);
+        int[] keys2 = columnIndexes(table2, columns2);
+        // The tuple is read back from whichever row the result row has
+        ComparisonRows.Column value = (r, i) -> r.getLeftRow(i) != ComparisonRows.NONE
+                ? tupleValue(table1, keys1, r.getLeftRow(i)) : tupleValue(table2, keys2, r.getRightRow(i));
+        ComparisonRows.Builder matched = rowDataLayout(table1, table2, value);
+        ComparisonRows.Builder mismatched = rowDataLayout(table1, table2, value);
         
-        for (Map<String, Object> row : data.getRows()) {
-            if (row != null) {
-                Object value = row.get(columnName);
-                if (value != null) {
-                    String[] values = value.toString().split(",");
-                    for (String val : values) {
-                        String key = val.trim();
-                        if (!key.isEmpty()) {
-                            resultMap.put(key, row);
-                        }
-                    }
+        progress.update(Phase.JOINING, index1.groupCount() + index2.groupCount());
+        boolean[] matched2 = new boolean[index2.groupCount()];
+        progress.update(Phase.MATERIALIZING, 0);
+        for (int group = 0; group < index1.groupCount(); group++) {
+            int other = index2.find(index1, group);
+            for (int p = index1.rowsStart(group); p < index1.rowsEnd(group); p++) {
+                if (other < 0) {
+                    mismatched.add(null, index1.row(p), ComparisonRows.NONE, ONLY_LEFT);
+                    reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
+                    continue;
+                }
+                for (int q = index2.rowsStart(other); q < index2.rowsEnd(other); q++) {
+                    matched.add(null, index1.row(p), index2.row(q), MATCHED);
+                    reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
                 }
             }
+            if (other >= 0) {
+                matched2[other] = true;
+            }
         }
         
-        return resultMap;
+        for (int group = 0; group < index2.groupCount(); group++) {
+            if (matched2[group]) {
+                continue;
+            }
+            for (int q = index2.rowsStart(group); q < index2.rowsEnd(group); q++) {
+                mismatched.add(null, ComparisonRows.NONE, index2.row(q), ONLY_RIGHT);
+                reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
+            }
+        }
+        return new ComparisonResult(matched.build(), mismatched.build());
     }
     
-    private String formatRowData(Map<String, Object> row) {
-        if (row == null) return "";
-        
+    private static int[] columnIndexes(SheetTable table, List<String> columnNames) {
+        int[] columns = new int[columnNames.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = table.columnIndex(columnNames.get(i));
+        }
+        return columns;
+    }
+    
+    // Display form of a row's key tuple; only built for rendered result rows
+    private static String tupleValue(SheetTable table, int[] columns, int row) {
         StringBuilder sb = new StringBuilder();
-        for (Map.Entry<String, Object> entry : row.entrySet()) {
-            if (sb.length() > 0) {
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
                 sb.append(" | ");
             }
-            sb.append(entry.getKey()).append(": ").append(entry.getValue() != null ? entry.getValue().toString() : "");
+            sb.append(table.getValue(columns[i], row).trim());
         }
         return sb.toString();
     }
+    
+    // The comparison value, each side's whole row formatted as "header: value | ...", status
+    private static ComparisonRows.Builder rowDataLayout(SheetTable table1, SheetTable table2,
+                                                        ComparisonRows.Column value) {
+        return ComparisonRows.builder("MATCHED", "MISMATCHED", "MISMATCHED")
+                .retains(tableBytes(table1, table2))
+                .column("Comparison_Value", value)
+                .column("File1_Row_Data", (r, i) -> r.getLeftRow(i) != ComparisonRows.NONE
+                        ? formatRowData(table1, r.getLeftRow(i)) : "NOT FOUND")
+                .column("File2_Row_Data", (r, i) -> r.getRightRow(i) != ComparisonRows.NONE
+                        ? formatRowData(table2, r.getRightRow(i)) : "NOT FOUND")
+                .column("Status", ComparisonRows::getStatus);
+    }
+    
+    // Both tables a result reads from, which identical uploads may share
+    private static long tableBytes(SheetTable table1, SheetTable table2) {
+        return table1.estimatedBytes() + (table2 != table1 ? table2.estimatedBytes() : 0);
+    }
 
-    private Set<String> getColumnValues(ExcelData data, String columnName) {
-        Set<String> values = new HashSet<>();
+    private static long listBytes(List<String> values) {
+        long bytes = 16 + 4L * values.size();
+        for (String value : values) {
+            bytes += 40 + 2L * value.length();
+        }
+        return bytes;
+    }
+
+    private static void requireColumn(ExcelData file, String column, String which) {
+        if (column == null || column.trim().isEmpty()) {
+            throw new IllegalArgumentException("Both column names must be provided");
+        }
+        if (file.getHeaders() == null || !file.getHeaders().contains(column)) {
+            throw new IllegalArgumentException("Column '" + column + "' not found in " + which + " file");
+        }
+    }
+    
+    private ComparisonResult compareWithFullRowData(ExcelData file1, ExcelData file2, ColumnScan scan1, ColumnScan scan2,
+                                                    ComparisonProgress progress) {
+        progress.update(Phase.JOINING, scan1.getKeys().size() + scan2.getKeys().size());
+        ParallelComparisonEngine.KeyJoin<String> join = comparisonEngine.join(
+                scan1.getKeys(), scan1.getRows(), scan2.getKeys(), scan2.getRows(), progress);
+        return toRowDataResult(join, file1.getTable(), file2.getTable(), progress);
+    }
+    
+    private ComparisonResult compareWithAllRows(ExcelData file1, ExcelData file2, ColumnScan scan1, ColumnScan scan2,
+                                                ComparisonProgress progress) {
+        KeyIndex index1 = KeyIndex.build(scan1.getKeys(), scan1.getRows());
+        KeyIndex index2 = KeyIndex.build(scan2.getKeys(), scan2.getRows());
+        progress.update(Phase.JOINING, index1.entryCount() + index2.entryCount());
+        ParallelComparisonEngine.KeyJoin<String> join = comparisonEngine.joinAll(index1, index2, progress);
+        return toRowDataResult(join, file1.getTable(), file2.getTable(), progress);
+    }
+    
+    // Keys here can be one value of a comma-separated cell, so they are stored
+    private ComparisonResult toRowDataResult(ParallelComparisonEngine.KeyJoin<String> join, SheetTable table1, SheetTable table2,
+                                             ComparisonProgress progress) {
+        ComparisonRows.Column key = ComparisonRows::getKey;
+        ComparisonRows.Builder matched = rowDataLayout(table1, table2, key);
+        ComparisonRows.Builder mismatched = rowDataLayout(table1, table2, key);
+        progress.update(Phase.MATERIALIZING, 0);
         
-        if (data == null || columnName == null || columnName.trim().isEmpty()) {
-            return values;
+        for (int i = 0; i < join.matchedCount(); i++) {
+            matched.add(join.matchedKey(i), join.matchedLeftRow(i), join.matchedRightRow(i), MATCHED);
+            reportProgress(progress, matched.getRowCount());
         }
         
-        if (data.getHeaders() == null || !data.getHeaders().contains(columnName)) {
-            return values;
+        for (int i = 0; i < join.onlyLeftCount(); i++) {
+            mismatched.add(join.onlyLeftKey(i), join.onlyLeftRow(i), ComparisonRows.NONE, ONLY_LEFT);
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
         
-        if (data.getRows() == null) {
-            return values;
+        for (int i = 0; i < join.onlyRightCount(); i++) {
+            mismatched.add(join.onlyRightKey(i), ComparisonRows.NONE, join.onlyRightRow(i), ONLY_RIGHT);
+            reportProgress(progress, matched.getRowCount() + mismatched.getRowCount());
         }
         
-        for (Map<String, Object> row : data.getRows()) {
-            if (row != null) {
-                Object value = row.get(columnName);
-                if (value != null) {
-                    String stringValue = value.toString().trim();
-                    if (!stringValue.isEmpty()) {
-                        values.add(stringValue);
-                    }
-                }
+        return new ComparisonResult(matched.build(), mismatched.build());
+    }
+    
+    private static void reportProgress(ComparisonProgress progress, int rows) {
+        if (rows % PROGRESS_INTERVAL == 0) {
+            progress.update(Phase.MATERIALIZING, rows);
+        }
+    }
+    
+    private static String formatRowData(SheetTable table, int row) {
+        StringBuilder sb = new StringBuilder();
+        List<String> headers = table.getHeaders();
+        for (int j = 0; j < table.getColumnCount(); j++) {
+            if (sb.length() > 0) {
+                sb.append(" | ");
             }
+            sb.append(headers.get(j)).append(": ").append(table.getValue(j, row));
         }
-        
-        return values;
+        return sb.toString();
     }
 
+    /**
+     * Matched and mismatched rows as compact row references; see {@link ComparisonRows}.
+     */
     public static class ComparisonResult {
-        private final List<Map<String, Object>> matchedRows;
-        private final List<Map<String, Object>> mismatchedRows;
+        private final ComparisonRows matched;
+        private final ComparisonRows mismatched;
+        private final Map<String, Integer> columnChanges;
+
+        public ComparisonResult(ComparisonRows matched, ComparisonRows mismatched) {
+            this(matched, mismatched, null);
+        }
+
+        public ComparisonResult(ComparisonRows matched, ComparisonRows mismatched,
+                                Map<String, Integer> columnChanges) {
+            this.matched = matched;
+            this.mismatched = mismatched;
+            this.columnChanges = columnChanges;
+        }
+
+        /**
+         * For a row diff, the number of matched rows that changed in each mapped
+         * column; {@code null} otherwise.
+         */
+        public Map<String, Integer> getColumnChanges() {
+            return columnChanges;
+        }
+
+        public ComparisonRows getMatched() {
+            return matched;
+        }
 
-        public ComparisonResult(List<Map<String, Object>> matchedRows, List<Map<String, Object>> mismatchedRows) {
-            this.matchedRows = matchedRows;
-            this.mismatchedRows = mismatchedRows;
+        public ComparisonRows getMismatched() {
+            return mismatched;
         }
 
-        public List<Map<String, Object>> getMatchedRows() {
-            return matchedRows;
+        public int getMatchedCount() {
+            return matched.getRowCount();
         }
 
-        public List<Map<String, Object>> getMismatchedRows() {
-            return mismatchedRows;
+        public int getMismatchedCount() {
+            return mismatched.getRowCount();
         }
     }
 }
@@ -1,49 +1,57 @@
 package com.example.excelcomparison.service;
 
 import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.model.RowSource;
+import com.example.excelcomparison.model.SheetTable;
+import com.example.excelcomparison.model.SpilledContent;
+import org.apache.poi.poifs.filesystem.FileMagic;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.ByteArrayOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.*;
 
 @Service
 public class ExcelService {
+    private static final long USERMODEL_OVERHEAD_BYTES = 64 * 1024;
+    // An XSSFCell with its CTCell bean and value; HSSF cells are smaller
+    private static final long USERMODEL_CELL_BYTES = 400;
+
+    @Autowired
+    private StreamingXlsxReader streamingXlsxReader;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    // .xlsx uploads at or above this size are read through the SAX event API
+    @Value("${excel.streaming.threshold:5MB}")
+    private DataSize streamingThreshold;
+
+    // Rows kept in memory per sheet while writing a result workbook
+    @Value("${excel.export.row-window:100}")
+    private int exportRowWindow;
 
     public List<String> getSheetNames(MultipartFile file) throws IOException {
-        if (file == null || file.isEmpty()) {
-            throw new IllegalArgumentException("File cannot be null or empty");
+        try (ParsedWorkbook workbook = openWorkbook(file)) {
+            return workbook.getSheetNames();
         }
-        
-        Workbook workbook = WorkbookFactory.create(file.getInputStream());
-        List<String> sheetNames = new ArrayList<>();
-        
-        for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-            sheetNames.add(workbook.getSheetName(i));
-        }
-        
-        workbook.close();
-        return sheetNames;
     }
 
     public List<String> getSheetNames(byte[] fileContent) throws IOException {
-        if (fileContent == null || fileContent.length == 0) {
-            throw new IllegalArgumentException("File content cannot be null or empty");
-        }
-        
-        Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(fileContent));
-        List<String> sheetNames = new ArrayList<>();
-        
-        for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-            sheetNames.add(workbook.getSheetName(i));
+        try (ParsedWorkbook workbook = openWorkbook(fileContent, null)) {
+            return workbook.getSheetNames();
         }
-        
-        workbook.close();
-        return sheetNames;
     }
 
     public ExcelData parseExcelFile(MultipartFile file) throws IOException {
@@ -51,24 +59,88 @@ public class ExcelService {
     }
 
     public ExcelData parseExcelFile(MultipartFile file, int sheetIndex) throws IOException {
+        try (ParsedWorkbook workbook = openWorkbook(file)) {
+            return workbook.parseSheet(sheetIndex);
+        }
+    }
+
+    public ExcelData parseExcelFile(byte[] fileContent, int sheetIndex, String fileName) throws IOException {
+        try (ParsedWorkbook workbook = openWorkbook(fileContent, fileName)) {
+            return workbook.parseSheet(sheetIndex);
+        }
+    }
+
+    /**
+     * Opens the upload once. The returned workbook lists sheets and parses any of
+     * them without re-reading the file; the caller owns it and must close it.
+     */
+    public ParsedWorkbook openWorkbook(MultipartFile file) throws IOException {
         if (file == null || file.isEmpty()) {
             throw new IllegalArgumentException("File cannot be null or empty");
         }
         
-        Workbook workbook = WorkbookFactory.create(file.getInputStream());
-        return parseExcelFromWorkbook(workbook, sheetIndex, file.getOriginalFilename());
+        long start = System.nanoTime();
+        if (useStreaming(file.getInputStream(), file.getSize())) {
+            return metered(streamingXlsxReader.openCopy(file.getInputStream(), file.getOriginalFilename()),
+                    PipelineMetrics.STREAMING, start);
+        }
+        
+        return metered(new UserModelWorkbook(WorkbookFactory.create(file.getInputStream()), file.getOriginalFilename()),
+                PipelineMetrics.USERMODEL, start);
     }
 
-    public ExcelData parseExcelFile(byte[] fileContent, int sheetIndex, String fileName) throws IOException {
+    public ParsedWorkbook openWorkbook(byte[] fileContent, String fileName) throws IOException {
         if (fileContent == null || fileContent.length == 0) {
             throw new IllegalArgumentException("File content cannot be null or empty");
         }
         
-        Workbook workbook = WorkbookFactory.create(new ByteArrayInputStream(fileContent));
-        return parseExcelFromWorkbook(workbook, sheetIndex, fileName);
+        long start = System.nanoTime();
+        if (useStreaming(fileContent)) {
+            return metered(streamingXlsxReader.openCopy(new ByteArrayInputStream(fileContent), fileName),
+                    PipelineMetrics.STREAMING, start);
+        }
+        
+        return metered(new UserModelWorkbook(WorkbookFactory.create(new ByteArrayInputStream(fileContent)), fileName),
+                PipelineMetrics.USERMODEL, start);
+    }
+
+    public ParsedWorkbook openWorkbook(SpilledContent content, String fileName) throws IOException {
+        if (content == null || content.getSize() == 0) {
+            throw new IllegalArgumentException("File content cannot be null or empty");
+        }
+        
+        long start = System.nanoTime();
+        if (useStreaming(content.openStream(), content.getSize())) {
+            // Straight from the spilled file; parts are inflated only while read
+            return metered(streamingXlsxReader.open(content.getPath(), fileName), PipelineMetrics.STREAMING, start);
+        }
+        
+        try (InputStream in = content.openStream()) {
+            return metered(new UserModelWorkbook(WorkbookFactory.create(in), fileName), PipelineMetrics.USERMODEL, start);
+        }
     }
 
-    private ExcelData parseExcelFromWorkbook(Workbook workbook, int sheetIndex, String fileName) throws IOException {
+    private ParsedWorkbook metered(ParsedWorkbook workbook, String reader, long openStart) {
+        pipelineMetrics.recordWorkbookOpen(reader, System.nanoTime() - openStart);
+        return new MeteredWorkbook(workbook, reader);
+    }
+
+    private boolean useStreaming(byte[] fileContent) {
+        return fileContent.length >= streamingThreshold.toBytes()
+                && FileMagic.valueOf(fileContent) == FileMagic.OOXML;
+    }
+
+    private boolean useStreaming(InputStream inputStream, long size) throws IOException {
+        if (size < streamingThreshold.toBytes()) {
+            inputStream.close();
+            return false;
+        }
+        try (InputStream in = FileMagic.prepareToCheckMagic(inputStream)) {
+            return FileMagic.valueOf(in) == FileMagic.OOXML;
+        }
+    }
+
+    private ExcelData parseExcelFromWorkbook(Workbook workbook, int sheetIndex, String fileName, Set<String> columns) {
         Sheet sheet = workbook.getSheetAt(sheetIndex);
         
         // Get all sheet names
@@ -78,7 +150,6 @@ public class ExcelService {
         }
         
         List<String> headers = new ArrayList<>();
-        List<Map<String, Object>> rows = new ArrayList<>();
         
         Row headerRow = sheet.getRow(0);
         if (headerRow != null) {
@@ -87,21 +158,123 @@ public class ExcelService {
             }
         }
         
+        // Only the projected columns are read from each row
+        ColumnProjection projection = new ColumnProjection(headers, columns);
+        int[] sourceColumns = new int[projection.getHeaders().size()];
+        for (int j = 0; j < headers.size(); j++) {
+            if (projection.positionOf(j) >= 0) {
+                sourceColumns[projection.positionOf(j)] = j;
+            }
+        }
+        
+        SheetTable.Builder table = SheetTable.builder(projection.getHeaders());
+        String[] values = new String[sourceColumns.length];
         for (int i = 1; i <= sheet.getLastRowNum(); i++) {
             Row row = sheet.getRow(i);
             if (row != null) {
-                Map<String, Object> rowData = new LinkedHashMap<>();
-                for (int j = 0; j < headers.size(); j++) {
-                    Cell cell = row.getCell(j);
-                    rowData.put(headers.get(j), getCellValueAsString(cell));
+                for (int j = 0; j < sourceColumns.length; j++) {
+                    values[j] = getCellValueAsString(row.getCell(sourceColumns[j]));
                 }
-                rows.add(rowData);
+                table.addRow(values);
             }
         }
         
         String selectedSheet = workbook.getSheetName(sheetIndex);
-        workbook.close();
-        return new ExcelData(fileName, headers, rows, sheetNames, selectedSheet);
+        return projection.toExcelData(fileName, table.build(), sheetNames, selectedSheet);
+    }
+
+    /**
+     * Keeps a usermodel workbook (.xls, or .xlsx below the streaming threshold) open
+     * so that switching sheets does not parse the file again.
+     */
+    private class UserModelWorkbook implements ParsedWorkbook {
+        private final Workbook workbook;
+        private final String fileName;
+        private final List<String> sheetNames = new ArrayList<>();
+        private final long estimatedBytes;
+
+        UserModelWorkbook(Workbook workbook, String fileName) {
+            this.workbook = workbook;
+            this.fileName = fileName;
+            long cells = 0;
+            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
+                sheetNames.add(workbook.getSheetName(i));
+                for (Row row : workbook.getSheetAt(i)) {
+                    cells += row.getPhysicalNumberOfCells();
+                }
+            }
+            // The whole object model stays loaded, so it is charged by cell
+            this.estimatedBytes = USERMODEL_OVERHEAD_BYTES + USERMODEL_CELL_BYTES * cells;
+        }
+
+        @Override
+        public String getFileName() {
+            return fileName;
+        }
+
+        @Override
+        public List<String> getSheetNames() {
+            return Collections.unmodifiableList(sheetNames);
+        }
+
+        @Override
+        public ExcelData parseSheet(int sheetIndex, Set<String> columns) {
+            if (sheetIndex < 0 || sheetIndex >= sheetNames.size()) {
+                throw new IllegalArgumentException("Sheet index " + sheetIndex + " is out of range");
+            }
+            return parseExcelFromWorkbook(workbook, sheetIndex, fileName, columns);
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return estimatedBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            workbook.close();
+        }
+    }
+
+    /**
+     * Records parse time and sheet size for every sheet parsed from a workbook.
+     */
+    private class MeteredWorkbook implements ParsedWorkbook {
+        private final ParsedWorkbook delegate;
+        private final String reader;
+
+        MeteredWorkbook(ParsedWorkbook delegate, String reader) {
+            this.delegate = delegate;
+            this.reader = reader;
+        }
+
+        @Override
+        public String getFileName() {
+            return delegate.getFileName();
+        }
+
+        @Override
+        public List<String> getSheetNames() {
+            return delegate.getSheetNames();
+        }
+
+        @Override
+        public ExcelData parseSheet(int sheetIndex, Set<String> columns) throws IOException {
+            long start = System.nanoTime();
+            ExcelData data = delegate.parseSheet(sheetIndex, columns);
+            pipelineMetrics.recordSheetParse(reader, System.nanoTime() - start, data.getTable());
+            return data;
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return delegate.estimatedBytes();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
     }
 
     public byte[] createComparisonResult(List<Map<String, Object>> matchedRows, 
@@ -136,6 +309,64 @@ public class ExcelService {
         return outputStream.toByteArray();
     }
 
+    public byte[] createComparisonResult(SheetTable matched, SheetTable mismatched) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writeComparisonResult(matched, mismatched, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Streams the result workbook to {@code out}. Only the last
+     * {@code excel.export.row-window} rows are held in memory; older rows are
+     * flushed to a compressed temporary file as the sheet grows.
+     */
+    public void writeComparisonResult(RowSource matched, RowSource mismatched, OutputStream out) throws IOException {
+        boolean hasMatched = matched != null && matched.getRowCount() > 0;
+        boolean hasMismatched = mismatched != null && mismatched.getRowCount() > 0;
+        
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        SXSSFWorkbook workbook = new SXSSFWorkbook(exportRowWindow);
+        workbook.setCompressTempFiles(true);
+        try {
+            if (hasMatched) {
+                createSheetWithData(workbook.createSheet("Matched Rows"), matched);
+            }
+            
+            if (hasMismatched) {
+                createSheetWithData(workbook.createSheet("Mismatched Rows"), mismatched);
+            }
+            
+            if (!hasMatched && !hasMismatched) {
+                Sheet emptySheet = workbook.createSheet("No Results");
+                Row row = emptySheet.createRow(0);
+                Cell cell = row.createCell(0);
+                cell.setCellValue("No comparison results available");
+            }
+            
+            workbook.write(counted);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+        pipelineMetrics.recordExport(System.nanoTime() - start, counted.getCount());
+    }
+
+    private void createSheetWithData(Sheet sheet, RowSource data) {
+        Row headerRow = sheet.createRow(0);
+        List<String> headers = data.getHeaders();
+        for (int j = 0; j < headers.size(); j++) {
+            headerRow.createCell(j).setCellValue(headers.get(j));
+        }
+        
+        for (int i = 0; i < data.getRowCount(); i++) {
+            Row row = sheet.createRow(i + 1);
+            for (int j = 0; j < data.getColumnCount(); j++) {
+                row.createCell(j).setCellValue(data.getValue(j, i));
+            }
+        }
+    }
+
     private void createSheetWithData(Sheet sheet, List<Map<String, Object>> data) {
         if (sheet == null || data == null || data.isEmpty()) return;
         
@@ -166,6 +397,30 @@ public class ExcelService {
         }
     }
 
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
     private String getCellValueAsString(Cell cell) {
         if (cell == null) {
             return "";
@@ -173,15 +428,15 @@ public class ExcelService {
         
         switch (cell.getCellType()) {
             case STRING:
-                return cell.getStringCellValue();
+                return CellValues.text(cell.getStringCellValue());
             case NUMERIC:
                 if (DateUtil.isCellDateFormatted(cell)) {
-                    return cell.getDateCellValue().toString();
+                    return CellValues.date(cell.getLocalDateTimeCellValue());
                 } else {
-                    return String.valueOf(cell.getNumericCellValue());
+                    return CellValues.numeric(cell.getNumericCellValue());
                 }
             case BOOLEAN:
-                return String.valueOf(cell.getBooleanCellValue());
+                return CellValues.bool(cell.getBooleanCellValue());
             case FORMULA:
                 return cell.getCellFormula();
             default:
@@ -0,0 +1,188 @@
+package com.example.excelcomparison.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts a stream of keys in bounded memory. Keys are buffered up to the run size,
+ * then sorted, deduplicated and written to a temp file as one run; {@link #sorted()}
+ * merges the runs back into a single ascending stream of distinct keys. Input that
+ * fits in one run never touches the disk.
+ *
+ * Run files are deleted by {@link #close()}.
+ */
+final class ExternalKeySorter implements Closeable {
+    private final Path directory;
+    private final String[] buffer;
+    private final List<Path> runs = new ArrayList<>();
+    private final List<DataInputStream> readers = new ArrayList<>();
+    private int buffered;
+    private long spilledKeys;
+
+    ExternalKeySorter(Path directory, int runSize) {
+        this.directory = directory;
+        this.buffer = new String[Math.max(1, runSize)];
+    }
+
+    void add(String key) throws IOException {
+        if (buffered == buffer.length) {
+            spill();
+        }
+        buffer[buffered++] = key;
+    }
+
+    /**
+     * Number of run files written so far.
+     */
+    int runCount() {
+        return runs.size();
+    }
+
+    /**
+     * Keys written to run files, after deduplication within each run.
+     */
+    long spilledKeys() {
+        return spilledKeys;
+    }
+
+    /**
+     * The distinct keys added so far, in ascending order. Call once, after the last
+     * {@link #add}.
+     */
+    KeyCursor sorted() throws IOException {
+        if (runs.isEmpty()) {
+            int distinct = sortBuffer();
+            String[] keys = Arrays.copyOf(buffer, distinct);
+            return new KeyCursor() {
+                private int next;
+
+                @Override
+                public String next() {
+                    return next < keys.length ? keys[next++] : null;
+                }
+            };
+        }
+        if (buffered > 0) {
+            spill();
+        }
+
+        PriorityQueue<RunHead> heads = new PriorityQueue<>();
+        for (Path run : runs) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            readers.add(in);
+            RunHead head = new RunHead(in);
+            if (head.advance()) {
+                heads.add(head);
+            }
+        }
+        return new KeyCursor() {
+            private String last;
+
+            @Override
+            public String next() throws IOException {
+                // Runs are distinct internally, but the same key can head several runs
+                while (!heads.isEmpty()) {
+                    RunHead head = heads.poll();
+                    String key = head.key;
+                    if (head.advance()) {
+                        heads.add(head);
+                    }
+                    if (!key.equals(last)) {
+                        last = key;
+                        return key;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DataInputStream reader : readers) {
+            reader.close();
+        }
+        readers.clear();
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    private void spill() throws IOException {
+        int distinct = sortBuffer();
+        Files.createDirectories(directory);
+        Path run = Files.createTempFile(directory, "keys-", ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < distinct; i++) {
+                // Length-prefixed UTF-8; writeUTF caps strings at 64KB
+                byte[] bytes = buffer[i].getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+        spilledKeys += distinct;
+        Arrays.fill(buffer, 0, buffered, null);
+        buffered = 0;
+    }
+
+    // Sorts the buffered keys and moves the distinct ones to the front
+    private int sortBuffer() {
+        Arrays.sort(buffer, 0, buffered);
+        int distinct = 0;
+        for (int i = 0; i < buffered; i++) {
+            if (distinct == 0 || !buffer[i].equals(buffer[distinct - 1])) {
+                buffer[distinct++] = buffer[i];
+            }
+        }
+        return distinct;
+    }
+
+    /**
+     * A forward-only stream of keys; {@code null} marks the end.
+     */
+    interface KeyCursor {
+        String next() throws IOException;
+    }
+
+    private static final class RunHead implements Comparable<RunHead> {
+        private final DataInputStream in;
+        private String key;
+
+        RunHead(DataInputStream in) {
+            this.in = in;
+        }
+
+        boolean advance() throws IOException {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            key = new String(bytes, StandardCharsets.UTF_8);
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunHead other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.excelcomparison.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the most similar key by trigram Jaccard similarity without comparing
+ * every pair. Each normalized key becomes the set of its character trigrams
+ * (padded at both ends, so short keys still have several), ordered from the
+ * rarest trigram to the most common. Two sets can only reach similarity
+ * {@code t} if they share a trigram within their first {@code |X| - ceil(t|X|) + 1}
+ * entries, so only those prefixes are indexed and probed; a length filter drops
+ * candidates whose sizes alone rule them out, and the rest are verified exactly.
+ *
+ * The index is read-only once built; each thread queries through its own
+ * {@link Searcher}.
+ */
+final class FuzzyKeyIndex {
+    private static final char PAD = '\u0001';
+    private static final double EPSILON = 1e-9;
+
+    private final KeyNormalizer normalizer;
+    private final double threshold;
+    private final Map<Long, Integer> ranks = new HashMap<>();
+    private int[][] grams;
+    private int[] postingOffsets;
+    private int[] postings;
+
+    private FuzzyKeyIndex(KeyNormalizer normalizer, double threshold) {
+        this.normalizer = normalizer;
+        this.threshold = threshold;
+    }
+
+    static FuzzyKeyIndex build(List<String> keys, KeyNormalizer normalizer, double threshold) {
+        FuzzyKeyIndex index = new FuzzyKeyIndex(normalizer, threshold);
+        List<long[]> keyGrams = new ArrayList<>(keys.size());
+        Map<Long, int[]> frequencies = new HashMap<>();
+        for (String key : keys) {
+            long[] distinct = trigrams(normalizer.normalize(key));
+            keyGrams.add(distinct);
+            for (long gram : distinct) {
+                frequencies.computeIfAbsent(gram, g -> new int[1])[0]++;
+            }
+        }
+
+        // Rarest first; ties broken by the trigram itself so the order is total
+        Long[] order = frequencies.keySet().toArray(new Long[0]);
+        Arrays.sort(order, (a, b) -> {
+            int byFrequency = Integer.compare(frequencies.get(a)[0], frequencies.get(b)[0]);
+            return byFrequency != 0 ? byFrequency : Long.compare(a, b);
+        });
+        for (int rank = 0; rank < order.length; rank++) {
+            index.ranks.put(order[rank], rank);
+        }
+
+        index.grams = new int[keys.size()][];
+        index.postingOffsets = new int[order.length + 1];
+        for (int id = 0; id < keys.size(); id++) {
+            long[] distinct = keyGrams.get(id);
+            int[] ranked = new int[distinct.length];
+            for (int i = 0; i < distinct.length; i++) {
+                ranked[i] = index.ranks.get(distinct[i]);
+            }
+            Arrays.sort(ranked);
+            index.grams[id] = ranked;
+            for (int i = 0; i < index.prefixLength(ranked.length); i++) {
+                index.postingOffsets[ranked[i] + 1]++;
+            }
+        }
+        for (int rank = 0; rank < order.length; rank++) {
+            index.postingOffsets[rank + 1] += index.postingOffsets[rank];
+        }
+        index.postings = new int[index.postingOffsets[order.length]];
+        int[] next = Arrays.copyOf(index.postingOffsets, order.length);
+        for (int id = 0; id < keys.size(); id++) {
+            int[] ranked = index.grams[id];
+            for (int i = 0; i < index.prefixLength(ranked.length); i++) {
+                index.postings[next[ranked[i]]++] = id;
+            }
+        }
+        return index;
+    }
+
+    int size() {
+        return grams.length;
+    }
+
+    Searcher searcher() {
+        return new Searcher();
+    }
+
+    // Trigrams shared with a set of the given size before similarity t is out of reach
+    private int prefixLength(int size) {
+        return size - (int) Math.ceil(threshold * size - EPSILON) + 1;
+    }
+
+    /**
+     * The trigram Jaccard similarity {@link Searcher#best} scores two keys by.
+     */
+    static double similarity(String a, String b, KeyNormalizer normalizer) {
+        long[] x = trigrams(normalizer.normalize(a));
+        long[] y = trigrams(normalizer.normalize(b));
+        int shared = 0;
+        for (int i = 0, j = 0; i < x.length && j < y.length; ) {
+            if (x[i] == y[j]) {
+                shared++;
+                i++;
+                j++;
+            } else if (x[i] < y[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        int union = x.length + y.length - shared;
+        return union == 0 ? 0 : (double) shared / union;
+    }
+
+    private static long[] trigrams(String value) {
+        if (value.isEmpty()) {
+            return new long[0];
+        }
+        String padded = PAD + "" + PAD + value + PAD + PAD;
+        long[] result = new long[padded.length() - 2];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(result);
+        int distinct = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (distinct == 0 || result[i] != result[distinct - 1]) {
+                result[distinct++] = result[i];
+            }
+        }
+        return Arrays.copyOf(result, distinct);
+    }
+
+    /**
+     * Per-thread query state: a stamp per indexed key marks candidates already
+     * verified for the current query.
+     */
+    final class Searcher {
+        private final int[] seen = new int[grams.length];
+        private int query;
+        private double score;
+        private long candidates;
+
+        /**
+         * The id of the most similar indexed key at or above the threshold (the
+         * lowest id on a tie), or -1.
+         */
+        int best(String key) {
+            long[] distinct = trigrams(normalizer.normalize(key));
+            score = 0;
+            if (distinct.length == 0) {
+                return -1;
+            }
+            // Trigrams the index never saw rank before all others and match nothing
+            int[] known = rankedKnown(distinct);
+            int unknown = distinct.length - known.length;
+
+            int size = distinct.length;
+            int minSize = (int) Math.ceil(threshold * size - EPSILON);
+            double maxSize = size / threshold + EPSILON;
+            int probes = prefixLength(size) - unknown;
+            query++;
+            int best = -1;
+            for (int i = 0; i < probes && i < known.length; i++) {
+                for (int p = postingOffsets[known[i]]; p < postingOffsets[known[i] + 1]; p++) {
+                    int id = postings[p];
+                    if (seen[id] == query) {
+                        continue;
+                    }
+                    seen[id] = query;
+                    int[] other = grams[id];
+                    if (other.length < minSize || other.length > maxSize) {
+                        continue;
+                    }
+                    candidates++;
+                    // Fewest shared trigrams that still reach the threshold for these sizes
+                    int required = (int) Math.ceil(threshold / (1 + threshold) * (size + other.length) - EPSILON);
+                    int shared = overlap(known, other, required);
+                    if (shared < required) {
+                        continue;
+                    }
+                    double similarity = (double) shared / (size + other.length - shared);
+                    if (similarity >= threshold - EPSILON && (similarity > score || (similarity == score && id < best))) {
+                        score = similarity;
+                        best = id;
+                    }
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Similarity of the last {@link #best} match.
+         */
+        double score() {
+            return score;
+        }
+
+        /**
+         * Keys verified exactly so far, after the prefix and length filters.
+         */
+        long candidates() {
+            return candidates;
+        }
+
+        private int[] rankedKnown(long[] distinct) {
+            int[] known = new int[distinct.length];
+            int k = 0;
+            for (long gram : distinct) {
+                Integer rank = ranks.get(gram);
+                if (rank != null) {
+                    known[k++] = rank;
+                }
+            }
+            Arrays.sort(known, 0, k);
+            return Arrays.copyOf(known, k);
+        }
+
+        // Stops early, returning less than required, once required is out of reach
+        private int overlap(int[] a, int[] b, int required) {
+            int shared = 0;
+            int i = 0;
+            int j = 0;
+            while (i < a.length && j < b.length) {
+                if (shared + Math.min(a.length - i, b.length - j) < required) {
+                    return shared;
+                }
+                if (a[i] == b[j]) {
+                    shared++;
+                    i++;
+                    j++;
+                } else if (a[i] < b[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return shared;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.excelcomparison.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Heap-resident {@link StorageService}. Entries are kept in access order and evicted
+ * least-recently-used first once their combined weight exceeds
+ * {@code storage.max-size}, or when they have not been read for {@code storage.ttl}.
+ */
+@Service
+public class InMemoryStorageService implements StorageService {
+
+    private final long maxBytes;
+    private final long ttlMillis;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final List<RemovalListener> listeners = new CopyOnWriteArrayList<>();
+    private long currentBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter sizeEvictions;
+    private final Counter expiredEvictions;
+
+    public InMemoryStorageService(@Value("${storage.max-size:512MB}") DataSize maxSize,
+                                  @Value("${storage.ttl:2h}") Duration ttl,
+                                  MeterRegistry meterRegistry) {
+        this.maxBytes = maxSize.toBytes();
+        this.ttlMillis = ttl.toMillis();
+
+        this.hits = Counter.builder("storage.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("storage.requests").tag("result", "miss").register(meterRegistry);
+        this.sizeEvictions = Counter.builder("storage.evictions").tag("cause", "size").register(meterRegistry);
+        this.expiredEvictions = Counter.builder("storage.evictions").tag("cause", "expired").register(meterRegistry);
+        Gauge.builder("storage.size", this, StorageService::getWeightedSize)
+                .baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("storage.entries", this, StorageService::getEntryCount).register(meterRegistry);
+    }
+
+    @Override
+    public void put(String key, Object value, long weightBytes) {
+        List<Removal> removals = new ArrayList<>();
+        synchronized (this) {
+            Entry previous = entries.put(key, new Entry(value, weightBytes, System.currentTimeMillis()));
+            currentBytes += weightBytes;
+            if (previous != null) {
+                currentBytes -= previous.weight;
+                if (previous.value != value) {
+                    removals.add(new Removal(key, previous.value, RemovalCause.REPLACED));
+                }
+            }
+            expire(removals);
+            evictToSize(removals);
+        }
+        notifyListeners(removals);
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> type) {
+        List<Removal> removals = new ArrayList<>();
+        Object value = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+                entries.remove(key);
+                currentBytes -= entry.weight;
+                expiredEvictions.increment();
+                removals.add(new Removal(key, entry.value, RemovalCause.EXPIRED));
+            } else if (entry != null) {
+                entry.lastAccess = System.currentTimeMillis();
+                value = entry.value;
+            }
+        }
+        notifyListeners(removals);
+
+        if (type.isInstance(value)) {
+            hits.increment();
+            return type.cast(value);
+        }
+        misses.increment();
+        return null;
+    }
+
+    @Override
+    public void remove(String key) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.remove(key);
+            if (entry != null) {
+                currentBytes -= entry.weight;
+            }
+        }
+        if (entry != null) {
+            notifyListeners(Collections.singletonList(new Removal(key, entry.value, RemovalCause.EXPLICIT)));
+        }
+    }
+
+    @Override
+    public void addRemovalListener(RemovalListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized long getWeightedSize() {
+        return currentBytes;
+    }
+
+    @Override
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    private void expire(List<Removal> removals) {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            // Access order means the first unexpired entry ends the scan
+            if (!isExpired(eldest.getValue(), now)) {
+                break;
+            }
+            currentBytes -= eldest.getValue().weight;
+            expiredEvictions.increment();
+            removals.add(new Removal(eldest.getKey(), eldest.getValue().value, RemovalCause.EXPIRED));
+            it.remove();
+        }
+    }
+
+    private void evictToSize(List<Removal> removals) {
+        // The newest entry is kept even if it alone exceeds the budget
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && entries.size() > 1) {
+            Map.Entry<String, Entry> eldest = it.next();
+            currentBytes -= eldest.getValue().weight;
+            sizeEvictions.increment();
+            removals.add(new Removal(eldest.getKey(), eldest.getValue().value, RemovalCause.SIZE));
+            it.remove();
+        }
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return now - entry.lastAccess > ttlMillis;
+    }
+
+    private void notifyListeners(List<Removal> removals) {
+        for (Removal removal : removals) {
+            for (RemovalListener listener : listeners) {
+                listener.onRemoval(removal.key, removal.value, removal.cause);
+            }
+        }
+    }
+
+    private static class Entry {
+        private final Object value;
+        private final long weight;
+        private long lastAccess;
+
+        Entry(Object value, long weight, long lastAccess) {
+            this.value = value;
+            this.weight = weight;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    private static class Removal {
+        private final String key;
+        private final Object value;
+        private final RemovalCause cause;
+
+        Removal(String key, Object value, RemovalCause cause) {
+            this.key = key;
+            this.value = value;
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.excelcomparison.service;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Membership test for a large key set: a Bloom filter answers most probes, and
+ * only keys it cannot rule out are looked up in a sorted array of the distinct
+ * keys. {@link #contains} is therefore exact, while most misses never touch the
+ * strings at all.
+ */
+final class KeyFilter {
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final String[] sortedKeys;
+    private long candidates;
+    private long falsePositives;
+
+    private KeyFilter(long bitCount, int hashCount, String[] sortedKeys) {
+        this.bits = new long[(int) ((bitCount + 63) >>> 6)];
+        this.bitCount = bitCount;
+        this.hashCount = hashCount;
+        this.sortedKeys = sortedKeys;
+    }
+
+    /**
+     * Builds the filter over {@code keys} (which may repeat), sized so that a
+     * key outside the set passes the Bloom stage with about the given probability.
+     */
+    static KeyFilter build(List<String> keys, double falsePositiveRate) {
+        String[] sorted = distinctSorted(keys);
+        int n = Math.max(1, sorted.length);
+        double p = Math.min(0.5, Math.max(1e-9, falsePositiveRate));
+        long bitCount = Math.max(64, (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2))));
+        int hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+
+        KeyFilter filter = new KeyFilter(bitCount, hashCount, sorted);
+        for (String key : sorted) {
+            filter.add(key);
+        }
+        return filter;
+    }
+
+    boolean contains(String key) {
+        if (!mightContain(key)) {
+            return false;
+        }
+        candidates++;
+        if (Arrays.binarySearch(sortedKeys, key) >= 0) {
+            return true;
+        }
+        falsePositives++;
+        return false;
+    }
+
+    int size() {
+        return sortedKeys.length;
+    }
+
+    /**
+     * Probes that passed the Bloom stage and needed an exact lookup.
+     */
+    long getCandidates() {
+        return candidates;
+    }
+
+    long getFalsePositives() {
+        return falsePositives;
+    }
+
+    private void add(String key) {
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(String key) {
+        long hash = hash(key);
+        long h1 = hash;
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 chars, finished with a murmur3 mix so both
+     * halves are usable as independent hashes.
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static String[] distinctSorted(List<String> keys) {
+        String[] sorted = keys.toArray(new String[0]);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (distinct == 0 || !sorted[i].equals(sorted[distinct - 1])) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct);
+    }
+}
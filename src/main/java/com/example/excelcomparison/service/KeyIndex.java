@@ -0,0 +1,103 @@
+package com.example.excelcomparison.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inverted index from key to every row it occurs in. Row ids are kept in one flat
+ * array grouped by key, with {@code offsets[id]..offsets[id + 1]} delimiting the
+ * rows of key {@code id}, so no per-key collection or boxing is needed.
+ */
+final class KeyIndex {
+    private final List<String> keys;
+    private final Map<String, Integer> ids;
+    private final int[] offsets;
+    private final int[] rows;
+
+    private KeyIndex(List<String> keys, Map<String, Integer> ids, int[] offsets, int[] rows) {
+        this.keys = keys;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.rows = rows;
+    }
+
+    /**
+     * Builds the index from (key, row) pairs in ascending row order, as produced by
+     * {@link ColumnScan}. A key listed twice in the same cell is indexed once.
+     */
+    static KeyIndex build(List<String> keys, int[] rows) {
+        List<String> distinct = new ArrayList<>();
+        Map<String, Integer> ids = new HashMap<>(Math.max(16, keys.size() * 4 / 3 + 1));
+        IntArrayList lastRow = new IntArrayList();
+        IntArrayList counts = new IntArrayList();
+        int[] idAt = new int[keys.size()];
+        int total = 0;
+
+        for (int i = 0; i < keys.size(); i++) {
+            Integer id = ids.get(keys.get(i));
+            if (id == null) {
+                id = distinct.size();
+                ids.put(keys.get(i), id);
+                distinct.add(keys.get(i));
+                lastRow.add(-1);
+                counts.add(0);
+            }
+            if (lastRow.get(id) == rows[i]) {
+                idAt[i] = -1;
+                continue;
+            }
+            lastRow.set(id, rows[i]);
+            counts.set(id, counts.get(id) + 1);
+            idAt[i] = id;
+            total++;
+        }
+
+        int[] offsets = new int[distinct.size() + 1];
+        for (int id = 0; id < distinct.size(); id++) {
+            offsets[id + 1] = offsets[id] + counts.get(id);
+        }
+        int[] next = new int[distinct.size()];
+        System.arraycopy(offsets, 0, next, 0, next.length);
+        int[] grouped = new int[total];
+        for (int i = 0; i < idAt.length; i++) {
+            if (idAt[i] >= 0) {
+                grouped[next[idAt[i]]++] = rows[i];
+            }
+        }
+        return new KeyIndex(distinct, ids, offsets, grouped);
+    }
+
+    /** Number of distinct keys. */
+    int size() {
+        return keys.size();
+    }
+
+    /** Number of (key, row) entries. */
+    int entryCount() {
+        return rows.length;
+    }
+
+    String key(int id) {
+        return keys.get(id);
+    }
+
+    /** Id of {@code key}, or {@code -1} when it does not occur. */
+    int find(String key) {
+        Integer id = ids.get(key);
+        return id != null ? id : -1;
+    }
+
+    int rowsStart(int id) {
+        return offsets[id];
+    }
+
+    int rowsEnd(int id) {
+        return offsets[id + 1];
+    }
+
+    int row(int position) {
+        return rows[position];
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.excelcomparison.service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Folds keys before fuzzy matching. Each step is optional and named in
+ * {@code comparison.fuzzy.normalization}: {@code nfkc} applies Unicode NFKC so
+ * compatibility forms (full-width letters, ligatures) become their plain
+ * equivalents, {@code case} folds case, and {@code punctuation} and
+ * {@code whitespace} drop those characters entirely.
+ */
+final class KeyNormalizer {
+    private final boolean nfkc;
+    private final boolean caseFold;
+    private final boolean punctuation;
+    private final boolean whitespace;
+
+    private KeyNormalizer(boolean nfkc, boolean caseFold, boolean punctuation, boolean whitespace) {
+        this.nfkc = nfkc;
+        this.caseFold = caseFold;
+        this.punctuation = punctuation;
+        this.whitespace = whitespace;
+    }
+
+    /**
+     * @throws IllegalArgumentException for an unknown step name
+     */
+    static KeyNormalizer of(String... steps) {
+        boolean nfkc = false;
+        boolean caseFold = false;
+        boolean punctuation = false;
+        boolean whitespace = false;
+        for (String step : steps) {
+            switch (step.trim().toLowerCase(Locale.ROOT)) {
+                case "nfkc":
+                    nfkc = true;
+                    break;
+                case "case":
+                    caseFold = true;
+                    break;
+                case "punctuation":
+                    punctuation = true;
+                    break;
+                case "whitespace":
+                    whitespace = true;
+                    break;
+                case "":
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown normalization step: " + step);
+            }
+        }
+        return new KeyNormalizer(nfkc, caseFold, punctuation, whitespace);
+    }
+
+    String normalize(String key) {
+        String value = nfkc ? Normalizer.normalize(key, Normalizer.Form.NFKC) : key;
+        if (caseFold) {
+            // Upper then lower folds cases that lower-casing alone leaves apart
+            value = value.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        }
+        if (!punctuation && !whitespace) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if ((whitespace && Character.isWhitespace(codePoint)) || (punctuation && isPunctuation(codePoint))) {
+                continue;
+            }
+            sb.appendCodePoint(codePoint);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isPunctuation(int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION:
+            case Character.DASH_PUNCTUATION:
+            case Character.START_PUNCTUATION:
+            case Character.END_PUNCTUATION:
+            case Character.INITIAL_QUOTE_PUNCTUATION:
+            case Character.FINAL_QUOTE_PUNCTUATION:
+            case Character.OTHER_PUNCTUATION:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
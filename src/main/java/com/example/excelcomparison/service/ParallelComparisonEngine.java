@@ -0,0 +1,422 @@
+package com.example.excelcomparison.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Hash-partitioned outer join of two key columns. Both sides are scattered into
+ * the same set of buckets by key hash, each bucket is joined independently on a
+ * dedicated {@link ForkJoinPool}, and the per-bucket results are concatenated.
+ * Inputs below {@code comparison.parallel-threshold} keys run in a single bucket
+ * on the calling thread.
+ *
+ * Pool threads never see the caller's interrupt, so every task polls
+ * {@link ComparisonProgress#isCancelled()} as it goes and stops with a
+ * {@link CancellationException}.
+ */
+@Component
+public class ParallelComparisonEngine {
+
+    private static final Integer NO_ROW = -1;
+    // Iterations between cancellation polls, less one
+    private static final int CANCEL_CHECK_MASK = 4095;
+
+    private final ForkJoinPool pool;
+    private final int parallelism;
+    private final int partitions;
+    private final int parallelThreshold;
+
+    public ParallelComparisonEngine(@Value("${comparison.parallelism:0}") int parallelism,
+                                    @Value("${comparison.parallel-threshold:50000}") int parallelThreshold) {
+        this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        // A few buckets per worker keeps the load even when the key hash is skewed
+        this.partitions = Integer.highestOneBit(this.parallelism * 4 - 1) << 1;
+        this.parallelThreshold = parallelThreshold;
+        this.pool = new ForkJoinPool(this.parallelism);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Joins distinct keys of both sides. {@code leftRows}/{@code rightRows} carry the
+     * source row of each key and may be {@code null} when only the keys matter; when
+     * a key repeats, the last row wins.
+     */
+    public <K> KeyJoin<K> join(List<K> leftKeys, int[] leftRows, List<K> rightKeys, int[] rightRows,
+                               ComparisonProgress progress) {
+        int buckets = leftKeys.size() + rightKeys.size() < parallelThreshold ? 1 : partitions;
+        if (buckets == 1) {
+            return joinBucket(leftKeys, leftRows, new IntArrayList[]{allPositions(leftKeys.size())},
+                    rightKeys, rightRows, new IntArrayList[]{allPositions(rightKeys.size())}, progress);
+        }
+
+        IntArrayList[][] leftChunks = scatter(leftKeys, buckets, progress);
+        IntArrayList[][] rightChunks = scatter(rightKeys, buckets, progress);
+
+        List<Callable<KeyJoin<K>>> tasks = new ArrayList<>(buckets);
+        for (int b = 0; b < buckets; b++) {
+            IntArrayList[] leftPositions = bucket(leftChunks, b);
+            IntArrayList[] rightPositions = bucket(rightChunks, b);
+            tasks.add(() -> joinBucket(leftKeys, leftRows, leftPositions, rightKeys, rightRows, rightPositions,
+                    progress));
+        }
+
+        KeyJoin<K> merged = new KeyJoin<>();
+        for (KeyJoin<K> part : invokeAll(tasks)) {
+            merged.addAll(part);
+        }
+        return merged;
+    }
+
+    /**
+     * Joins every row of the left index with every row of the right index that
+     * shares its key. Unmatched keys contribute one entry per row. Key ranges of
+     * each side are processed as independent tasks once the inputs reach
+     * {@code comparison.parallel-threshold} entries.
+     */
+    KeyJoin<String> joinAll(KeyIndex left, KeyIndex right, ComparisonProgress progress) {
+        if (left.entryCount() + right.entryCount() < parallelThreshold) {
+            KeyJoin<String> result = joinLeftRange(left, right, 0, left.size(), progress);
+            result.addAll(onlyRightRange(left, right, 0, right.size(), progress));
+            return result;
+        }
+
+        List<Callable<KeyJoin<String>>> tasks = new ArrayList<>();
+        int leftChunk = Math.max(1, (left.size() + partitions - 1) / partitions);
+        for (int start = 0; start < left.size(); start += leftChunk) {
+            int from = start;
+            int to = Math.min(left.size(), start + leftChunk);
+            tasks.add(() -> joinLeftRange(left, right, from, to, progress));
+        }
+        int rightChunk = Math.max(1, (right.size() + partitions - 1) / partitions);
+        for (int start = 0; start < right.size(); start += rightChunk) {
+            int from = start;
+            int to = Math.min(right.size(), start + rightChunk);
+            tasks.add(() -> onlyRightRange(left, right, from, to, progress));
+        }
+
+        KeyJoin<String> merged = new KeyJoin<>();
+        for (KeyJoin<String> part : invokeAll(tasks)) {
+            merged.addAll(part);
+        }
+        return merged;
+    }
+
+    /**
+     * Looks up each left key's most similar key in {@code right}. Chunks of the left
+     * keys are searched as independent tasks once the inputs reach
+     * {@code comparison.parallel-threshold} keys.
+     */
+    SimilarityJoin joinSimilar(List<String> leftKeys, FuzzyKeyIndex right, ComparisonProgress progress) {
+        SimilarityJoin result = new SimilarityJoin(leftKeys.size());
+        if (leftKeys.size() + right.size() < parallelThreshold) {
+            result.candidates = searchRange(leftKeys, right, result, 0, leftKeys.size(), progress);
+            return result;
+        }
+
+        List<Callable<Long>> tasks = new ArrayList<>();
+        int chunk = Math.max(1, (leftKeys.size() + partitions - 1) / partitions);
+        for (int start = 0; start < leftKeys.size(); start += chunk) {
+            int from = start;
+            int to = Math.min(leftKeys.size(), start + chunk);
+            // Each task writes only its own slice of the result arrays
+            tasks.add(() -> searchRange(leftKeys, right, result, from, to, progress));
+        }
+        for (long candidates : invokeAll(tasks)) {
+            result.candidates += candidates;
+        }
+        return result;
+    }
+
+    private static long searchRange(List<String> leftKeys, FuzzyKeyIndex right, SimilarityJoin result,
+                                    int from, int to, ComparisonProgress progress) {
+        FuzzyKeyIndex.Searcher searcher = right.searcher();
+        for (int i = from; i < to; i++) {
+            checkCancelled(progress, i - from);
+            result.matches[i] = searcher.best(leftKeys.get(i));
+            result.scores[i] = searcher.score();
+        }
+        return searcher.candidates();
+    }
+
+    private static KeyJoin<String> joinLeftRange(KeyIndex left, KeyIndex right, int from, int to,
+                                                 ComparisonProgress progress) {
+        KeyJoin<String> result = new KeyJoin<>();
+        for (int id = from; id < to; id++) {
+            checkCancelled(progress, id - from);
+            String key = left.key(id);
+            int rightId = right.find(key);
+            for (int l = left.rowsStart(id); l < left.rowsEnd(id); l++) {
+                int leftRow = left.row(l);
+                if (rightId < 0) {
+                    result.onlyLeft(key, leftRow);
+                    continue;
+                }
+                for (int r = right.rowsStart(rightId); r < right.rowsEnd(rightId); r++) {
+                    result.matched(key, leftRow, right.row(r));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static KeyJoin<String> onlyRightRange(KeyIndex left, KeyIndex right, int from, int to,
+                                                  ComparisonProgress progress) {
+        KeyJoin<String> result = new KeyJoin<>();
+        for (int id = from; id < to; id++) {
+            checkCancelled(progress, id - from);
+            String key = right.key(id);
+            if (left.find(key) >= 0) {
+                continue;
+            }
+            for (int r = right.rowsStart(id); r < right.rowsEnd(id); r++) {
+                result.onlyRight(key, right.row(r));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits key positions into hash buckets, one contiguous chunk of the input per
+     * task. Result is indexed {@code [chunk][bucket]}; reading a bucket's chunks in
+     * order visits its positions in ascending order.
+     */
+    private <K> IntArrayList[][] scatter(List<K> keys, int buckets, ComparisonProgress progress) {
+        int chunkSize = Math.max(1, (keys.size() + parallelism - 1) / parallelism);
+        List<Callable<IntArrayList[]>> tasks = new ArrayList<>();
+        for (int start = 0; start < keys.size(); start += chunkSize) {
+            int from = start;
+            int to = Math.min(keys.size(), start + chunkSize);
+            tasks.add(() -> {
+                IntArrayList[] chunk = newBuckets(buckets, (to - from) / buckets + 1);
+                for (int i = from; i < to; i++) {
+                    checkCancelled(progress, i - from);
+                    chunk[bucketOf(keys.get(i), buckets)].add(i);
+                }
+                return chunk;
+            });
+        }
+
+        return invokeAll(tasks).toArray(new IntArrayList[0][]);
+    }
+
+    private static IntArrayList[] bucket(IntArrayList[][] chunks, int bucket) {
+        IntArrayList[] positions = new IntArrayList[chunks.length];
+        for (int c = 0; c < chunks.length; c++) {
+            positions[c] = chunks[c][bucket];
+        }
+        return positions;
+    }
+
+    private <K> KeyJoin<K> joinBucket(List<K> leftKeys, int[] leftRows, IntArrayList[] leftPositions,
+                                      List<K> rightKeys, int[] rightRows, IntArrayList[] rightPositions,
+                                      ComparisonProgress progress) {
+        Map<K, Integer> left = index(leftKeys, leftRows, leftPositions, progress);
+        Map<K, Integer> right = index(rightKeys, rightRows, rightPositions, progress);
+
+        KeyJoin<K> result = new KeyJoin<>();
+        int visited = 0;
+        for (Map.Entry<K, Integer> entry : left.entrySet()) {
+            checkCancelled(progress, visited++);
+            Integer rightRow = right.get(entry.getKey());
+            if (rightRow != null) {
+                result.matched(entry.getKey(), entry.getValue(), rightRow);
+            } else {
+                result.onlyLeft(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<K, Integer> entry : right.entrySet()) {
+            checkCancelled(progress, visited++);
+            if (!left.containsKey(entry.getKey())) {
+                result.onlyRight(entry.getKey(), entry.getValue());
+            }
+        }
+        return result;
+    }
+
+    private <K> Map<K, Integer> index(List<K> keys, int[] rows, IntArrayList[] positions,
+                                      ComparisonProgress progress) {
+        int size = 0;
+        for (IntArrayList part : positions) {
+            size += part.size();
+        }
+        Map<K, Integer> index = new HashMap<>(Math.max(16, size * 4 / 3 + 1));
+        for (IntArrayList part : positions) {
+            for (int i = 0; i < part.size(); i++) {
+                checkCancelled(progress, i);
+                int position = part.get(i);
+                index.put(keys.get(position), rows != null ? Integer.valueOf(rows[position]) : NO_ROW);
+            }
+        }
+        return index;
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Comparison was interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Comparison failed", e.getCause());
+        }
+    }
+
+    private static void checkCancelled(ComparisonProgress progress, int iteration) {
+        if ((iteration & CANCEL_CHECK_MASK) == 0 && progress.isCancelled()) {
+            throw new CancellationException("Comparison was cancelled");
+        }
+    }
+
+    private static int bucketOf(Object key, int buckets) {
+        int h = key.hashCode();
+        // Spread high bits down so that buckets do not mirror HashMap's own slots
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & (buckets - 1);
+    }
+
+    private static IntArrayList allPositions(int size) {
+        IntArrayList positions = new IntArrayList(size);
+        for (int i = 0; i < size; i++) {
+            positions.add(i);
+        }
+        return positions;
+    }
+
+    private static IntArrayList[] newBuckets(int buckets, int capacity) {
+        IntArrayList[] result = new IntArrayList[buckets];
+        for (int b = 0; b < buckets; b++) {
+            result[b] = new IntArrayList(capacity);
+        }
+        return result;
+    }
+
+    /**
+     * Outcome of {@link #joinSimilar}: for each left key, the id of its best match in
+     * the index ({@code -1} for none) and the similarity.
+     */
+    static class SimilarityJoin {
+        private final int[] matches;
+        private final double[] scores;
+        private long candidates;
+
+        SimilarityJoin(int size) {
+            this.matches = new int[size];
+            this.scores = new double[size];
+        }
+
+        int match(int i) {
+            return matches[i];
+        }
+
+        double score(int i) {
+            return scores[i];
+        }
+
+        /**
+         * Pairs verified exactly, out of the left size times the right size.
+         */
+        long candidates() {
+            return candidates;
+        }
+    }
+
+    /**
+     * Outcome of a join: every distinct key (or, for {@link #joinAll}, every key and
+     * row pair) lands in exactly one of the three groups, together with the row it
+     * came from on each side ({@code -1} when rows were not supplied).
+     */
+    public static class KeyJoin<K> {
+        private final List<K> matchedKeys = new ArrayList<>();
+        private final IntArrayList matchedLeftRows = new IntArrayList();
+        private final IntArrayList matchedRightRows = new IntArrayList();
+        private final List<K> onlyLeftKeys = new ArrayList<>();
+        private final IntArrayList onlyLeftRows = new IntArrayList();
+        private final List<K> onlyRightKeys = new ArrayList<>();
+        private final IntArrayList onlyRightRows = new IntArrayList();
+
+        void matched(K key, int leftRow, int rightRow) {
+            matchedKeys.add(key);
+            matchedLeftRows.add(leftRow);
+            matchedRightRows.add(rightRow);
+        }
+
+        void onlyLeft(K key, int leftRow) {
+            onlyLeftKeys.add(key);
+            onlyLeftRows.add(leftRow);
+        }
+
+        void onlyRight(K key, int rightRow) {
+            onlyRightKeys.add(key);
+            onlyRightRows.add(rightRow);
+        }
+
+        void addAll(KeyJoin<K> other) {
+            for (int i = 0; i < other.matchedKeys.size(); i++) {
+                matched(other.matchedKeys.get(i), other.matchedLeftRows.get(i), other.matchedRightRows.get(i));
+            }
+            for (int i = 0; i < other.onlyLeftKeys.size(); i++) {
+                onlyLeft(other.onlyLeftKeys.get(i), other.onlyLeftRows.get(i));
+            }
+            for (int i = 0; i < other.onlyRightKeys.size(); i++) {
+                onlyRight(other.onlyRightKeys.get(i), other.onlyRightRows.get(i));
+            }
+        }
+
+        public int matchedCount() {
+            return matchedKeys.size();
+        }
+
+        public K matchedKey(int i) {
+            return matchedKeys.get(i);
+        }
+
+        public int matchedLeftRow(int i) {
+            return matchedLeftRows.get(i);
+        }
+
+        public int matchedRightRow(int i) {
+            return matchedRightRows.get(i);
+        }
+
+        public int onlyLeftCount() {
+            return onlyLeftKeys.size();
+        }
+
+        public K onlyLeftKey(int i) {
+            return onlyLeftKeys.get(i);
+        }
+
+        public int onlyLeftRow(int i) {
+            return onlyLeftRows.get(i);
+        }
+
+        public int onlyRightCount() {
+            return onlyRightKeys.size();
+        }
+
+        public K onlyRightKey(int i) {
+            return onlyRightKeys.get(i);
+        }
+
+        public int onlyRightRow(int i) {
+            return onlyRightRows.get(i);
+        }
+    }
+}
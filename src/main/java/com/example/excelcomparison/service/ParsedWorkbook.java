@@ -0,0 +1,37 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ExcelData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An uploaded workbook that has been opened once and can be asked for any of its
+ * sheets without decompressing the file again. Implementations are not thread-safe
+ * on their own; {@link WorkbookSessionService} serializes access per workbook.
+ */
+public interface ParsedWorkbook extends Closeable {
+
+    String getFileName();
+
+    List<String> getSheetNames();
+
+    default ExcelData parseSheet(int sheetIndex) throws IOException {
+        return parseSheet(sheetIndex, null);
+    }
+
+    /**
+     * Parses only the named columns, or every column when {@code columns} is
+     * {@code null}. The table holds just the requested columns while
+     * {@link ExcelData#getHeaders()} still lists the whole header row; an empty set
+     * reads the headers and counts the rows.
+     */
+    ExcelData parseSheet(int sheetIndex, Set<String> columns) throws IOException;
+
+    /**
+     * Heap held by the open workbook itself, apart from any parsed tables.
+     */
+    long estimatedBytes();
+}
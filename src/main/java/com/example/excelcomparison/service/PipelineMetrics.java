@@ -0,0 +1,78 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.SheetTable;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers and size distributions for the upload, parse, compare and export stages.
+ * Meters are tagged by reader ({@code usermodel}/{@code streaming}) or comparison
+ * strategy so the variants can be told apart on a dashboard.
+ */
+@Component
+public class PipelineMetrics {
+
+    public static final String USERMODEL = "usermodel";
+    public static final String STREAMING = "streaming";
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary matchedRows;
+    private final DistributionSummary mismatchedRows;
+    private final Timer exportTime;
+    private final DistributionSummary exportBytes;
+
+    public PipelineMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.matchedRows = DistributionSummary.builder("comparison.result.rows")
+                .tag("outcome", "matched").baseUnit("rows").register(meterRegistry);
+        this.mismatchedRows = DistributionSummary.builder("comparison.result.rows")
+                .tag("outcome", "mismatched").baseUnit("rows").register(meterRegistry);
+        this.exportTime = Timer.builder("export.duration").register(meterRegistry);
+        this.exportBytes = DistributionSummary.builder("export.size")
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    /**
+     * Counts uploads, tagged by whether their bytes were already held by another
+     * upload and so were neither stored nor parsed again.
+     */
+    public void recordUpload(boolean deduplicated) {
+        meterRegistry.counter("upload.count", "deduplicated", String.valueOf(deduplicated)).increment();
+    }
+
+    public void recordWorkbookOpen(String reader, long nanos) {
+        Timer.builder("excel.workbook.open").tag("reader", reader)
+                .register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordSheetParse(String reader, long nanos, SheetTable table) {
+        Timer.builder("excel.sheet.parse").tag("reader", reader)
+                .register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+        if (table != null) {
+            DistributionSummary.builder("excel.sheet.rows").tag("reader", reader).baseUnit("rows")
+                    .register(meterRegistry).record(table.getRowCount());
+            DistributionSummary.builder("excel.sheet.cells").tag("reader", reader).baseUnit("cells")
+                    .register(meterRegistry).record((double) table.getRowCount() * table.getColumnCount());
+        }
+    }
+
+    /**
+     * One sample per comparison; the {@code strategy} tag also counts how often
+     * each strategy is chosen.
+     */
+    public void recordComparison(String strategy, long nanos, int matched, int mismatched) {
+        Timer.builder("comparison.duration").tag("strategy", strategy)
+                .register(meterRegistry).record(nanos, TimeUnit.NANOSECONDS);
+        matchedRows.record(matched);
+        mismatchedRows.record(mismatched);
+    }
+
+    public void recordExport(long nanos, long bytes) {
+        exportTime.record(nanos, TimeUnit.NANOSECONDS);
+        exportBytes.record(bytes);
+    }
+}
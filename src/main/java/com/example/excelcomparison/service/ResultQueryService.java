@@ -0,0 +1,330 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.RowSource;
+import com.example.excelcomparison.model.SheetTable;
+import com.example.excelcomparison.model.StringPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+/**
+ * Filtered, sorted and paged views over a stored table, so callers only ever
+ * materialise the rows they display. On a {@link SheetTable}, filtering and sort
+ * ranks are computed once per distinct dictionary value rather than once per cell;
+ * other sources, such as comparison results, render each cell the query reads
+ * and keep none of them.
+ *
+ * Selections made for a stored table are remembered per storage key, sort and
+ * filter, so paging through a view selects its rows once. They are kept up to
+ * {@code results.selection-cache.max-rows} row ids in total, least recently used
+ * first out, and dropped with the stored table.
+ */
+@Service
+public class ResultQueryService {
+
+    @Autowired
+    private StorageService storageService;
+
+    private final int defaultPageSize;
+    private final int maxPageSize;
+    private final long maxCachedRows;
+    private final LinkedHashMap<List<Object>, Selection> selections = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedRows;
+
+    public ResultQueryService(@Value("${results.page-size:25}") int defaultPageSize,
+                              @Value("${results.max-page-size:1000}") int maxPageSize,
+                              @Value("${results.selection-cache.max-rows:10000000}") long maxCachedRows) {
+        this.defaultPageSize = defaultPageSize;
+        this.maxPageSize = maxPageSize;
+        this.maxCachedRows = maxCachedRows;
+    }
+
+    @PostConstruct
+    public void registerStorageListener() {
+        storageService.addRemovalListener((key, value, cause) -> {
+            if (value instanceof RowSource) {
+                invalidate(key);
+            }
+        });
+    }
+
+    public RowPage firstPage(RowSource table) {
+        return page(table, 0, null, null, false, null);
+    }
+
+    /**
+     * Rows {@code offset..offset + limit} of the table after filtering and sorting.
+     * {@code filter} is a case-insensitive substring matched against every column;
+     * {@code sortColumn} may be {@code null} to keep the stored row order.
+     */
+    public RowPage page(RowSource table, int offset, Integer limit, String sortColumn, boolean descending,
+                        String filter) {
+        return page(null, table, offset, limit, sortColumn, descending, filter);
+    }
+
+    /**
+     * As {@link #page(RowSource, int, Integer, String, boolean, String)} for the
+     * table stored under {@code key}, reusing the selection of an earlier page.
+     */
+    public RowPage page(String key, RowSource table, int offset, Integer limit, String sortColumn,
+                        boolean descending, String filter) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative");
+        }
+        int pageSize = pageSize(limit);
+        if (table == null) {
+            return new RowPage(Collections.emptyList(), Collections.emptyList(), offset, pageSize, 0);
+        }
+
+        int[] rows = select(key, table, sortColumn, descending, filter);
+        int total = rows != null ? rows.length : table.getRowCount();
+        int end = (int) Math.min(total, (long) offset + pageSize);
+
+        List<Map<String, Object>> pageRows = new ArrayList<>(Math.max(0, end - offset));
+        for (int i = offset; i < end; i++) {
+            pageRows.add(table.getRow(rows != null ? rows[i] : i));
+        }
+        return new RowPage(table.getHeaders(), pageRows, offset, pageSize, total);
+    }
+
+    /**
+     * Row ids matching {@code filter} in the requested order, or {@code null} when
+     * neither a filter nor a sort applies and every row is selected in stored order.
+     */
+    public int[] select(RowSource table, String sortColumn, boolean descending, String filter) {
+        return select(null, table, sortColumn, descending, filter);
+    }
+
+    /**
+     * As {@link #select(RowSource, String, boolean, String)}, cached under the
+     * storage {@code key} of the table when it is not {@code null}. The returned
+     * array is shared and must not be modified.
+     */
+    public int[] select(String key, RowSource table, String sortColumn, boolean descending, String filter) {
+        boolean filtered = filter != null && !filter.trim().isEmpty();
+        boolean sorted = sortColumn != null && !sortColumn.isEmpty();
+        if (!filtered && !sorted) {
+            return null;
+        }
+
+        String needle = filtered ? filter.trim().toLowerCase(Locale.ROOT) : null;
+        List<Object> cacheKey = key != null
+                ? Arrays.asList(key, sorted ? sortColumn : null, sorted && descending, needle) : null;
+        if (cacheKey != null) {
+            synchronized (this) {
+                Selection cached = selections.get(cacheKey);
+                // The same key may have been reused for another table since
+                if (cached != null && cached.table == table) {
+                    return cached.rows;
+                }
+            }
+        }
+
+        int[] rows = selectRows(table, sorted ? sortColumn : null, descending, needle);
+        if (cacheKey != null) {
+            cache(cacheKey, new Selection(table, rows));
+        }
+        return rows;
+    }
+
+    private int[] selectRows(RowSource table, String sortColumn, boolean descending, String needle) {
+        int[] rows;
+        if (needle == null) {
+            rows = allRows(table.getRowCount());
+        } else if (table instanceof SheetTable) {
+            rows = filter((SheetTable) table, needle);
+        } else {
+            rows = filterCells(table, needle);
+        }
+        if (sortColumn != null) {
+            int column = table.columnIndex(sortColumn);
+            if (column < 0) {
+                throw new IllegalArgumentException("Unknown sort column '" + sortColumn + "'");
+            }
+            if (table instanceof SheetTable) {
+                SheetTable sheet = (SheetTable) table;
+                sort(sheet.getPool(), sheet.getColumnCodes(column), descending, rows);
+            } else {
+                // A throwaway dictionary of the selected cells, so ranks are still per value
+                StringPool pool = new StringPool();
+                int[] codes = new int[table.getRowCount()];
+                for (int row : rows) {
+                    codes[row] = pool.intern(table.getValue(column, row));
+                }
+                sort(pool, codes, descending, rows);
+            }
+        }
+        return rows;
+    }
+
+    private synchronized void cache(List<Object> key, Selection selection) {
+        if (selection.rows.length > maxCachedRows) {
+            return;
+        }
+        Selection previous = selections.put(key, selection);
+        if (previous != null) {
+            cachedRows -= previous.rows.length;
+        }
+        cachedRows += selection.rows.length;
+        Iterator<Selection> it = selections.values().iterator();
+        while (cachedRows > maxCachedRows) {
+            cachedRows -= it.next().rows.length;
+            it.remove();
+        }
+    }
+
+    private synchronized void invalidate(String key) {
+        Iterator<Map.Entry<List<Object>, Selection>> it = selections.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<List<Object>, Selection> entry = it.next();
+            if (entry.getKey().get(0).equals(key)) {
+                cachedRows -= entry.getValue().rows.length;
+                it.remove();
+            }
+        }
+    }
+
+    private int pageSize(Integer limit) {
+        if (limit == null) {
+            return defaultPageSize;
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        return Math.min(limit, maxPageSize);
+    }
+
+    private int[] filter(SheetTable table, String needle) {
+        StringPool pool = table.getPool();
+        boolean[] matches = new boolean[pool.size()];
+        for (int code = 0; code < pool.size(); code++) {
+            matches[code] = pool.get(code).toLowerCase(Locale.ROOT).contains(needle);
+        }
+
+        IntArrayList rows = new IntArrayList();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            for (int column = 0; column < table.getColumnCount(); column++) {
+                if (matches[table.getCode(column, row)]) {
+                    rows.add(row);
+                    break;
+                }
+            }
+        }
+        return rows.toArray();
+    }
+
+    private int[] filterCells(RowSource table, String needle) {
+        IntArrayList rows = new IntArrayList();
+        for (int row = 0; row < table.getRowCount(); row++) {
+            for (int column = 0; column < table.getColumnCount(); column++) {
+                if (table.getValue(column, row).toLowerCase(Locale.ROOT).contains(needle)) {
+                    rows.add(row);
+                    break;
+                }
+            }
+        }
+        return rows.toArray();
+    }
+
+    /**
+     * Sorts row ids by the rank of their cell value. Only the distinct values the rows
+     * use are sorted; each code's rank is then its value's position in that order.
+     * Rank and row id are packed into one long so a primitive sort keeps ties in row
+     * order.
+     */
+    private void sort(StringPool pool, int[] codes, boolean descending, int[] rows) {
+        boolean[] used = new boolean[pool.size()];
+        int distinct = 0;
+        for (int row : rows) {
+            if (!used[codes[row]]) {
+                used[codes[row]] = true;
+                distinct++;
+            }
+        }
+        String[] values = new String[distinct];
+        for (int code = 0, i = 0; code < used.length; code++) {
+            if (used[code]) {
+                values[i++] = pool.get(code);
+            }
+        }
+        // Pooled values are distinct, so this order is total and each value has one position
+        Comparator<String> order = String.CASE_INSENSITIVE_ORDER.thenComparing(Comparator.naturalOrder());
+        Arrays.sort(values, order);
+        int[] rank = new int[used.length];
+        for (int code = 0; code < used.length; code++) {
+            if (used[code]) {
+                int position = Arrays.binarySearch(values, pool.get(code), order);
+                rank[code] = descending ? distinct - 1 - position : position;
+            }
+        }
+
+        long[] keys = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            keys[i] = ((long) rank[codes[rows[i]]] << 32) | rows[i];
+        }
+        Arrays.sort(keys);
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = (int) keys[i];
+        }
+    }
+
+    private static int[] allRows(int count) {
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    private static class Selection {
+        private final RowSource table;
+        private final int[] rows;
+
+        Selection(RowSource table, int[] rows) {
+            this.table = table;
+            this.rows = rows;
+        }
+    }
+
+    public static class RowPage {
+        private final List<String> headers;
+        private final List<Map<String, Object>> rows;
+        private final int offset;
+        private final int limit;
+        private final int totalRows;
+
+        public RowPage(List<String> headers, List<Map<String, Object>> rows, int offset, int limit, int totalRows) {
+            this.headers = headers;
+            this.rows = rows;
+            this.offset = offset;
+            this.limit = limit;
+            this.totalRows = totalRows;
+        }
+
+        public List<String> getHeaders() {
+            return headers;
+        }
+
+        public List<Map<String, Object>> getRows() {
+            return rows;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getLimit() {
+            return limit;
+        }
+
+        /**
+         * Rows matching the filter, across all pages.
+         */
+        public int getTotalRows() {
+            return totalRows;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ExcelData;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Parsed sheets per upload content hash, kept under a shared memory budget. Entries are
+ * weighed by {@code SheetTable#estimatedBytes()} and the least recently selected
+ * sheets are evicted first once the budget is exceeded.
+ */
+@Service
+public class SheetTableCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+
+    public SheetTableCache(@Value("${excel.sheet-cache.max-size:256MB}") DataSize maxSize,
+                           MeterRegistry meterRegistry) {
+        this.maxBytes = maxSize.toBytes();
+        Gauge.builder("excel.sheet-cache.size", this, SheetTableCache::getCurrentBytes)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    public ExcelData get(String contentHash, int sheetIndex) {
+        return get(contentHash, sheetIndex, null);
+    }
+
+    /**
+     * @param projection identifies the subset of columns held, or {@code null} for
+     *                   the whole sheet
+     */
+    public synchronized ExcelData get(String contentHash, int sheetIndex, String projection) {
+        Entry entry = entries.get(key(contentHash, sheetIndex, projection));
+        return entry != null ? entry.data : null;
+    }
+
+    public void put(String contentHash, int sheetIndex, ExcelData data) {
+        put(contentHash, sheetIndex, null, data);
+    }
+
+    public synchronized void put(String contentHash, int sheetIndex, String projection, ExcelData data) {
+        long weight = data.getTable() != null ? data.getTable().estimatedBytes() : 0;
+        Entry previous = entries.put(key(contentHash, sheetIndex, projection), new Entry(data, weight));
+        if (previous != null) {
+            currentBytes -= previous.weight;
+        }
+        currentBytes += weight;
+        evict();
+    }
+
+    public synchronized void invalidate(String contentHash) {
+        String prefix = contentHash + ":";
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Entry> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                currentBytes -= entry.getValue().weight;
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    private void evict() {
+        // Always keep the most recent entry, even if it alone exceeds the budget
+        Iterator<Entry> it = entries.values().iterator();
+        while (currentBytes > maxBytes && entries.size() > 1) {
+            currentBytes -= it.next().weight;
+            it.remove();
+        }
+    }
+
+    private static String key(String contentHash, int sheetIndex, String projection) {
+        return projection != null ? contentHash + ":" + sheetIndex + ":" + projection : contentHash + ":" + sheetIndex;
+    }
+
+    private static class Entry {
+        private final ExcelData data;
+        private final long weight;
+
+        Entry(ExcelData data, long weight) {
+            this.data = data;
+            this.weight = weight;
+        }
+    }
+}
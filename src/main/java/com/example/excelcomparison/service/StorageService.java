@@ -0,0 +1,33 @@
+package com.example.excelcomparison.service;
+
+/**
+ * Holds uploads and comparison results between requests. Implementations decide
+ * how entries are bounded and evicted; callers supply each entry's weight in bytes
+ * and are told through removal listeners when an entry goes away.
+ */
+public interface StorageService {
+
+    void put(String key, Object value, long weightBytes);
+
+    /**
+     * Returns the entry, or {@code null} if it is absent, expired or not of the
+     * requested type.
+     */
+    <T> T get(String key, Class<T> type);
+
+    void remove(String key);
+
+    void addRemovalListener(RemovalListener listener);
+
+    long getWeightedSize();
+
+    int getEntryCount();
+
+    enum RemovalCause {
+        EXPLICIT, REPLACED, SIZE, EXPIRED
+    }
+
+    interface RemovalListener {
+        void onRemoval(String key, Object value, RemovalCause cause);
+    }
+}
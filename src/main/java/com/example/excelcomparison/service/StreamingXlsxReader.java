@@ -0,0 +1,293 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.model.SheetTable;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.stereotype.Component;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Reads .xlsx sheets through the XSSF event API so that large workbooks never
+ * materialize an {@code XSSFWorkbook}. Sheet XML is parsed event by event against
+ * the shared-strings table and rows are built as they stream past.
+ *
+ * Packages are opened read-only from a file, so zip entries are inflated only
+ * while a part is read. A package opened from a stream would inflate every entry
+ * onto the heap and keep it there for as long as the workbook stays open.
+ */
+@Component
+public class StreamingXlsxReader {
+    private static final long WORKBOOK_OVERHEAD_BYTES = 16 * 1024;
+    // A read-only shared string is an XSSFRichTextString over its own CTRst bean
+    private static final long SHARED_STRING_BYTES = 160;
+
+    public List<String> getSheetNames(Path path) throws IOException {
+        try (ParsedWorkbook workbook = open(path, null)) {
+            return workbook.getSheetNames();
+        }
+    }
+
+    public ExcelData parseSheet(Path path, int sheetIndex, String fileName) throws IOException {
+        try (ParsedWorkbook workbook = open(path, fileName)) {
+            return workbook.parseSheet(sheetIndex);
+        }
+    }
+
+    /**
+     * Opens the package once and indexes its sheet parts, shared strings and styles
+     * so that any sheet can later be streamed without re-reading the ZIP. The file
+     * must stay in place until the workbook is closed.
+     */
+    public ParsedWorkbook open(Path path, String fileName) throws IOException {
+        return open(path, fileName, null);
+    }
+
+    /**
+     * Copies content that only exists as a stream to a temporary file and opens
+     * that; the file is deleted when the workbook is closed.
+     */
+    public ParsedWorkbook openCopy(InputStream inputStream, String fileName) throws IOException {
+        Path copy = Files.createTempFile("workbook-", ".xlsx");
+        try {
+            Files.copy(inputStream, copy, StandardCopyOption.REPLACE_EXISTING);
+            return open(copy, fileName, copy);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(copy);
+            throw e;
+        }
+    }
+
+    private ParsedWorkbook open(Path path, String fileName, Path temporary) throws IOException {
+        OPCPackage pkg;
+        try {
+            pkg = OPCPackage.open(path.toFile(), PackageAccess.READ);
+        } catch (OpenXML4JException e) {
+            throw new IOException("Unable to read workbook: " + e.getMessage(), e);
+        }
+        try {
+            XSSFReader reader = new XSSFReader(pkg);
+            List<String> sheetNames = new ArrayList<>();
+            List<PackagePart> sheetParts = new ArrayList<>();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                // Only the name and part are kept; the sheet is streamed again when parsed
+                InputStream sheet = sheets.next();
+                sheetNames.add(sheets.getSheetName());
+                sheetParts.add(sheets.getSheetPart());
+                sheet.close();
+            }
+            return new StreamingWorkbook(fileName, pkg, new ReadOnlySharedStringsTable(pkg),
+                    reader.getStylesTable(), sheetNames, sheetParts, temporary);
+        } catch (OpenXML4JException | SAXException | IOException e) {
+            pkg.revert();
+            throw e instanceof IOException ? (IOException) e
+                    : new IOException("Unable to read workbook: " + e.getMessage(), e);
+        }
+    }
+
+    private static class StreamingWorkbook implements ParsedWorkbook {
+        private final String fileName;
+        private final OPCPackage pkg;
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final StylesTable styles;
+        private final List<String> sheetNames;
+        private final List<PackagePart> sheetParts;
+        private final Path temporary;
+        private final long estimatedBytes;
+
+        StreamingWorkbook(String fileName, OPCPackage pkg, ReadOnlySharedStringsTable sharedStrings,
+                          StylesTable styles, List<String> sheetNames, List<PackagePart> sheetParts,
+                          Path temporary) {
+            this.fileName = fileName;
+            this.pkg = pkg;
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.sheetNames = Collections.unmodifiableList(sheetNames);
+            this.sheetParts = sheetParts;
+            this.temporary = temporary;
+            // Sheets stay on disk; the shared strings are the only part kept inflated
+            long bytes = WORKBOOK_OVERHEAD_BYTES;
+            for (int i = 0; i < sharedStrings.getUniqueCount(); i++) {
+                bytes += SHARED_STRING_BYTES + 2L * sharedStrings.getItemAt(i).length();
+            }
+            this.estimatedBytes = bytes;
+        }
+
+        @Override
+        public String getFileName() {
+            return fileName;
+        }
+
+        @Override
+        public List<String> getSheetNames() {
+            return sheetNames;
+        }
+
+        @Override
+        public ExcelData parseSheet(int sheetIndex, Set<String> columns) throws IOException {
+            if (sheetIndex < 0 || sheetIndex >= sheetParts.size()) {
+                throw new IllegalArgumentException("Sheet index " + sheetIndex + " is out of range");
+            }
+            RowCollector collector = new RowCollector(columns);
+            try (InputStream sheetStream = sheetParts.get(sheetIndex).getInputStream()) {
+                processSheet(styles, sharedStrings, collector, sheetStream);
+            } catch (SAXException e) {
+                throw new IOException("Unable to read sheet: " + e.getMessage(), e);
+            }
+            return collector.projection().toExcelData(fileName, collector.build(), sheetNames,
+                    sheetNames.get(sheetIndex));
+        }
+
+        @Override
+        public long estimatedBytes() {
+            return estimatedBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // Opened read-only, so there is nothing to write back; revert closes the file
+            pkg.revert();
+            if (temporary != null) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+
+    private static void processSheet(StylesTable styles, ReadOnlySharedStringsTable sharedStrings,
+                              RowCollector collector, InputStream sheetStream) throws IOException, SAXException {
+        try {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new TypedSheetHandler(styles, sharedStrings, collector));
+            parser.parse(new InputSource(sheetStream));
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Unable to create SAX parser: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Renders numeric cells through {@link CellValues} like
+     * {@code ExcelService#getCellValueAsString} does for the usermodel path, so both
+     * ingestion modes produce identical values.
+     */
+    private static class RawValueFormatter extends DataFormatter {
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                return CellValues.date(value);
+            }
+            return CellValues.numeric(value);
+        }
+    }
+
+    /**
+     * Tells the collector whether the cell being read is a boolean. The base handler
+     * renders booleans as {@code TRUE}/{@code FALSE} text, so without the cell type
+     * they could not be rendered through {@link CellValues} like the usermodel path.
+     */
+    private static class TypedSheetHandler extends XSSFSheetXMLHandler {
+        private final RowCollector collector;
+
+        TypedSheetHandler(StylesTable styles, ReadOnlySharedStringsTable sharedStrings, RowCollector collector) {
+            super(styles, null, sharedStrings, collector, new RawValueFormatter(), true);
+            this.collector = collector;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes)
+                throws SAXException {
+            if ("c".equals(localName)) {
+                collector.booleanCell = "b".equals(attributes.getValue("t"));
+            }
+            super.startElement(uri, localName, qName, attributes);
+        }
+    }
+
+    /**
+     * Mirrors {@code ExcelService#parseExcelFromWorkbook}: row 0 supplies the headers,
+     * every later physical row is appended to the table positionally. Cells outside
+     * the projection are dropped as they arrive.
+     */
+    private static class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Set<String> columns;
+        private final List<String> headers = new ArrayList<>();
+        private ColumnProjection projection;
+        private SheetTable.Builder table;
+        private String[] currentValues;
+        private int currentRow = -1;
+        private int nextColumn;
+        private boolean booleanCell;
+
+        RowCollector(Set<String> columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            currentRow = rowNum;
+            nextColumn = 0;
+            if (rowNum > 0) {
+                if (table == null) {
+                    table = SheetTable.builder(projection().getHeaders());
+                    currentValues = new String[projection.getHeaders().size()];
+                }
+                Arrays.fill(currentValues, null);
+            }
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            if (rowNum > 0) {
+                table.addRow(currentValues);
+            }
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            nextColumn = column + 1;
+            String value = booleanCell ? CellValues.bool("TRUE".equals(formattedValue)) : CellValues.text(formattedValue);
+            if (currentRow == 0) {
+                headers.add(value);
+            } else if (currentRow > 0) {
+                int position = projection.positionOf(column);
+                if (position >= 0) {
+                    currentValues[position] = value;
+                }
+            }
+        }
+
+        ColumnProjection projection() {
+            if (projection == null) {
+                projection = new ColumnProjection(headers, columns);
+            }
+            return projection;
+        }
+
+        SheetTable build() {
+            return table != null ? table.build() : SheetTable.builder(projection().getHeaders()).build();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.SheetTable;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Groups the rows of a table by a composite key of several columns. Each row's key
+ * tuple is reduced to a 64-bit fingerprint combined from per-value hashes, which
+ * are computed once per distinct dictionary code, so no concatenated key strings
+ * are built. Rows whose fingerprints collide are only grouped together after their
+ * values compare equal column by column, and lookups from another table verify the
+ * same way, so the grouping is exact.
+ *
+ * Rows whose key cells are all empty have no key and are left out, as with a
+ * single key column. Cell values are compared whole; commas are not split.
+ */
+final class TupleIndex {
+    private static final int NONE = -1;
+
+    private final String[][] keysByCode;
+    private final int[][] codes;
+    private final int width;
+
+    // Open-addressed table from fingerprint to the first group with it
+    private final long[] slotFingerprints;
+    private final int[] slotGroups;
+    private final int mask;
+
+    private final IntArrayList groupRows = new IntArrayList();
+    private final IntArrayList nextInSlot = new IntArrayList();
+    private long[] groupFingerprints = new long[16];
+    private int groupCount;
+
+    private int[] offsets;
+    private int[] rows;
+
+    private TupleIndex(SheetTable table, int[] columns) {
+        width = columns.length;
+        keysByCode = new String[width][];
+        codes = new int[width][];
+        int pooled = table.getPool().size();
+        for (int i = 0; i < width; i++) {
+            keysByCode[i] = new String[pooled];
+            codes[i] = table.getColumnCodes(columns[i]);
+        }
+        int capacity = Integer.highestOneBit(Math.max(16, table.getRowCount() * 2 - 1)) << 1;
+        slotFingerprints = new long[capacity];
+        slotGroups = new int[capacity];
+        Arrays.fill(slotGroups, NONE);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Indexes {@code table} by the named columns, which must all exist.
+     */
+    static TupleIndex build(SheetTable table, List<String> columnNames) {
+        int[] columns = new int[columnNames.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = table.columnIndex(columnNames.get(i));
+        }
+        TupleIndex index = new TupleIndex(table, columns);
+        long[][] hashesByCode = new long[columns.length][table.getPool().size()];
+        boolean[][] hashed = new boolean[columns.length][table.getPool().size()];
+
+        int rowCount = table.getRowCount();
+        int[] rowGroup = new int[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            long fingerprint = 0x9e3779b97f4a7c15L;
+            boolean empty = true;
+            for (int i = 0; i < columns.length; i++) {
+                int code = index.codes[i][row];
+                if (!hashed[i][code]) {
+                    String key = table.getPool().get(code).trim();
+                    index.keysByCode[i][code] = key;
+                    hashesByCode[i][code] = KeyFilter.hash(key);
+                    hashed[i][code] = true;
+                }
+                empty &= index.keysByCode[i][code].isEmpty();
+                fingerprint = Long.rotateLeft((fingerprint ^ hashesByCode[i][code]) * 0xbf58476d1ce4e5b9L, 31);
+            }
+            rowGroup[row] = empty ? NONE : index.groupOf(row, fingerprint);
+        }
+        index.collectRows(rowGroup);
+        return index;
+    }
+
+    int groupCount() {
+        return groupCount;
+    }
+
+    /**
+     * The first row of the group in table order.
+     */
+    int firstRow(int group) {
+        return groupRows.get(group);
+    }
+
+    int rowsStart(int group) {
+        return offsets[group];
+    }
+
+    int rowsEnd(int group) {
+        return offsets[group + 1];
+    }
+
+    int row(int position) {
+        return rows[position];
+    }
+
+    /**
+     * The group's value in the {@code column}-th key column.
+     */
+    String value(int group, int column) {
+        return keysByCode[column][codes[column][groupRows.get(group)]];
+    }
+
+    int width() {
+        return width;
+    }
+
+    /**
+     * The group of this index whose key equals {@code other}'s group, or -1.
+     */
+    int find(TupleIndex other, int otherGroup) {
+        long fingerprint = other.groupFingerprints[otherGroup];
+        for (int slot = slotOf(fingerprint); slotGroups[slot] != NONE; slot = (slot + 1) & mask) {
+            if (slotFingerprints[slot] == fingerprint) {
+                for (int group = slotGroups[slot]; group != NONE; group = nextInSlot.get(group)) {
+                    if (sameKey(group, other, otherGroup)) {
+                        return group;
+                    }
+                }
+                return NONE;
+            }
+        }
+        return NONE;
+    }
+
+    private int groupOf(int row, long fingerprint) {
+        int slot = slotOf(fingerprint);
+        while (slotGroups[slot] != NONE && slotFingerprints[slot] != fingerprint) {
+            slot = (slot + 1) & mask;
+        }
+        if (slotGroups[slot] == NONE) {
+            slotFingerprints[slot] = fingerprint;
+            slotGroups[slot] = newGroup(row, fingerprint, NONE);
+            return slotGroups[slot];
+        }
+        // Same fingerprint: the same key, unless the hashes collided
+        for (int group = slotGroups[slot]; group != NONE; group = nextInSlot.get(group)) {
+            if (sameCodes(groupRows.get(group), row)) {
+                return group;
+            }
+        }
+        slotGroups[slot] = newGroup(row, fingerprint, slotGroups[slot]);
+        return slotGroups[slot];
+    }
+
+    private int newGroup(int row, long fingerprint, int next) {
+        if (groupCount == groupFingerprints.length) {
+            groupFingerprints = Arrays.copyOf(groupFingerprints, groupCount * 2);
+        }
+        groupFingerprints[groupCount] = fingerprint;
+        groupRows.add(row);
+        nextInSlot.add(next);
+        return groupCount++;
+    }
+
+    private boolean sameCodes(int row, int otherRow) {
+        for (int i = 0; i < width; i++) {
+            int code = codes[i][row];
+            int otherCode = codes[i][otherRow];
+            // Distinct codes can still trim to the same key
+            if (code != otherCode && !keysByCode[i][code].equals(keysByCode[i][otherCode])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean sameKey(int group, TupleIndex other, int otherGroup) {
+        for (int i = 0; i < width; i++) {
+            if (!value(group, i).equals(other.value(otherGroup, i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void collectRows(int[] rowGroup) {
+        offsets = new int[groupCount + 1];
+        for (int group : rowGroup) {
+            if (group != NONE) {
+                offsets[group + 1]++;
+            }
+        }
+        for (int group = 0; group < groupCount; group++) {
+            offsets[group + 1] += offsets[group];
+        }
+        rows = new int[offsets[groupCount]];
+        int[] next = Arrays.copyOf(offsets, groupCount);
+        for (int row = 0; row < rowGroup.length; row++) {
+            if (rowGroup[row] != NONE) {
+                rows[next[rowGroup[row]]++] = row;
+            }
+        }
+    }
+
+    private int slotOf(long fingerprint) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+}
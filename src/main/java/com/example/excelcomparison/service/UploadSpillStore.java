@@ -0,0 +1,193 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.SpilledContent;
+import com.example.excelcomparison.model.UploadedFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes raw upload bytes to a local directory so they do not count against the
+ * heap. The bytes are hashed while they are written, and uploads with the same
+ * hash share one file; it is deleted when the last upload referencing it leaves
+ * {@link StorageService}.
+ */
+@Service
+public class UploadSpillStore {
+
+    @Autowired
+    private StorageService storageService;
+
+    @Autowired
+    private PipelineMetrics pipelineMetrics;
+
+    private final Path directory;
+    private final Map<String, SharedContent> byHash = new HashMap<>();
+
+    public UploadSpillStore(@Value("${storage.spill.directory:}") String directory) {
+        this.directory = directory.isEmpty()
+                ? Paths.get(System.getProperty("java.io.tmpdir"), "excel-comparison-uploads")
+                : Paths.get(directory);
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        Files.createDirectories(directory);
+        storageService.addRemovalListener((key, value, cause) -> {
+            if (value instanceof UploadedFile && cause != StorageService.RemovalCause.REPLACED) {
+                release(((UploadedFile) value).getContent());
+            }
+        });
+    }
+
+    public SpilledContent spill(MultipartFile file) throws IOException {
+        try (InputStream in = file.getInputStream()) {
+            return spill(in);
+        }
+    }
+
+    /**
+     * Spills the stream and returns its content. If identical bytes are already
+     * held, the new copy is dropped and the existing content is returned with one
+     * more reference; every call must be paired with {@link #release}.
+     */
+    public SpilledContent spill(InputStream in) throws IOException {
+        Path path = Files.createTempFile(directory, "upload-", ".bin");
+        SpilledContent spilled;
+        try {
+            DigestInputStream digestIn = new DigestInputStream(in, sha256());
+            long size = Files.copy(digestIn, path, StandardCopyOption.REPLACE_EXISTING);
+            spilled = new SpilledContent(path, size, toHex(digestIn.getMessageDigest().digest()));
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return share(spilled);
+    }
+
+    /**
+     * Creates an empty file in the spill directory for an upload that arrives in
+     * chunks; {@link #adopt} later turns it into content.
+     */
+    public Path createStagingFile() throws IOException {
+        return Files.createTempFile(directory, "staging-", ".part");
+    }
+
+    /**
+     * Hashes a completely staged file in one sequential read and takes it over as
+     * content, with the same sharing as {@link #spill(InputStream)}. The staged
+     * path no longer exists afterwards.
+     */
+    public SpilledContent adopt(Path staged) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(staged), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        long size = Files.size(staged);
+        Path path = Files.createTempFile(directory, "upload-", ".bin");
+        try {
+            Files.move(staged, path, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return share(new SpilledContent(path, size, toHex(digest.digest())));
+    }
+
+    private SpilledContent share(SpilledContent spilled) {
+
+        SpilledContent shared;
+        synchronized (byHash) {
+            SharedContent existing = byHash.get(spilled.getContentHash());
+            if (existing == null) {
+                byHash.put(spilled.getContentHash(), new SharedContent(spilled));
+                shared = spilled;
+            } else {
+                existing.references++;
+                shared = existing.content;
+            }
+        }
+        pipelineMetrics.recordUpload(shared != spilled);
+        if (shared != spilled) {
+            delete(spilled);
+        }
+        return shared;
+    }
+
+    /**
+     * Drops one reference to the content, deleting the file with the last one.
+     */
+    public void release(SpilledContent content) {
+        if (content == null) {
+            return;
+        }
+        synchronized (byHash) {
+            SharedContent shared = byHash.get(content.getContentHash());
+            if (shared == null || shared.content != content || --shared.references > 0) {
+                return;
+            }
+            byHash.remove(content.getContentHash());
+        }
+        delete(content);
+    }
+
+    private static void delete(SpilledContent content) {
+        try {
+            content.delete();
+        } catch (IOException e) {
+            // Left for cleanup on shutdown
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every JRE is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+    @PreDestroy
+    public void cleanup() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().startsWith("upload-")
+                            || path.getFileName().toString().startsWith("staging-"))
+                    .forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static class SharedContent {
+        private final SpilledContent content;
+        private int references = 1;
+
+        SharedContent(SpilledContent content) {
+            this.content = content;
+        }
+    }
+}
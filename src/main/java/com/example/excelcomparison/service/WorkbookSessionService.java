@@ -0,0 +1,235 @@
+package com.example.excelcomparison.service;
+
+import com.example.excelcomparison.model.ExcelData;
+import com.example.excelcomparison.model.SpilledContent;
+import com.example.excelcomparison.model.UploadedFile;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps one opened workbook per distinct upload content so that listing sheets,
+ * parsing the initial sheet and switching sheets all reuse the same decompressed
+ * workbook. Uploads of identical bytes share the workbook and its parsed sheets,
+ * which stay open until the last of those uploads is closed.
+ */
+@Service
+public class WorkbookSessionService {
+
+    @Autowired
+    private ExcelService excelService;
+
+    @Autowired
+    private SheetTableCache sheetTableCache;
+
+    @Autowired
+    private StorageService storageService;
+
+    @Value("${excel.projection.enabled:true}")
+    private boolean projectionEnabled;
+
+    // Both guarded by "this"; workbooks are opened and closed outside the lock
+    private final Map<String, FileSession> files = new HashMap<>();
+    private final Map<String, Session> sessions = new HashMap<>();
+
+    @PostConstruct
+    public void registerStorageListener() {
+        // A session lives exactly as long as its upload stays in storage
+        storageService.addRemovalListener((key, value, cause) -> {
+            if (value instanceof UploadedFile && cause != StorageService.RemovalCause.REPLACED) {
+                close(key);
+            }
+        });
+    }
+
+    public ParsedWorkbook open(String fileId, SpilledContent content, String fileName) throws IOException {
+        close(fileId);
+        String contentHash = content.getContentHash();
+        synchronized (this) {
+            if (sessions.containsKey(contentHash)) {
+                return register(fileId, contentHash, fileName);
+            }
+        }
+
+        ParsedWorkbook opened = excelService.openWorkbook(content, fileName);
+        ParsedWorkbook workbook;
+        synchronized (this) {
+            if (!sessions.containsKey(contentHash)) {
+                sessions.put(contentHash, new Session(opened));
+            }
+            workbook = register(fileId, contentHash, fileName);
+        }
+        if (workbook != opened) {
+            // Another upload of the same bytes got there first
+            closeQuietly(opened);
+        }
+        return workbook;
+    }
+
+    public synchronized ParsedWorkbook get(String fileId) {
+        FileSession file = files.get(fileId);
+        return file != null ? sessions.get(file.contentHash).workbook : null;
+    }
+
+    /**
+     * Heap held by the upload's open workbook, or 0 if it has none.
+     */
+    public synchronized long estimatedBytes(String fileId) {
+        ParsedWorkbook workbook = get(fileId);
+        return workbook != null ? workbook.estimatedBytes() : 0;
+    }
+
+    public List<String> getSheetNames(String fileId) {
+        ParsedWorkbook workbook = require(fileId);
+        synchronized (workbook) {
+            return workbook.getSheetNames();
+        }
+    }
+
+    /**
+     * Returns the sheet from the cache, parsing it from the open workbook only the
+     * first time it is requested for this content (or after it has been evicted).
+     * The parsed table is shared; each caller gets its own {@link ExcelData}
+     * carrying its upload's file name.
+     */
+    public ExcelData getSheet(String fileId, int sheetIndex) throws IOException {
+        FileSession file = requireFile(fileId);
+        ExcelData sheet = sheetTableCache.get(file.contentHash, sheetIndex);
+        if (sheet == null) {
+            sheet = parseSheet(fileId, sheetIndex);
+            sheetTableCache.put(file.contentHash, sheetIndex, sheet);
+        }
+        return new ExcelData(file.fileName, sheet.getTable(), sheet.getSheetNames(), sheet.getSelectedSheet());
+    }
+
+    /**
+     * The sheet as kept for a selected upload: with projection enabled only its
+     * header row and row count, otherwise the whole sheet. Comparisons read the
+     * columns they need through {@link #getColumns}.
+     */
+    public ExcelData selectSheet(String fileId, int sheetIndex) throws IOException {
+        return projectionEnabled
+                ? getColumns(fileId, sheetIndex, Collections.emptySet())
+                : getSheet(fileId, sheetIndex);
+    }
+
+    /**
+     * A table holding at least the named columns: the whole sheet if it is already
+     * cached, otherwise a parse of just those columns, itself cached by column set.
+     */
+    public ExcelData getColumns(String fileId, int sheetIndex, Set<String> columns) throws IOException {
+        FileSession file = requireFile(fileId);
+        ExcelData sheet = sheetTableCache.get(file.contentHash, sheetIndex);
+        if (sheet == null) {
+            String projection = String.join("\u001f", new TreeSet<>(columns));
+            sheet = sheetTableCache.get(file.contentHash, sheetIndex, projection);
+            if (sheet == null) {
+                sheet = parseSheet(fileId, sheetIndex, columns);
+                sheetTableCache.put(file.contentHash, sheetIndex, projection, sheet);
+            }
+        }
+        ExcelData data = new ExcelData(file.fileName, sheet.getTable(), sheet.getSheetNames(), sheet.getSelectedSheet());
+        data.setHeaders(sheet.getHeaders());
+        return data;
+    }
+
+    public ExcelData parseSheet(String fileId, int sheetIndex) throws IOException {
+        return parseSheet(fileId, sheetIndex, null);
+    }
+
+    public ExcelData parseSheet(String fileId, int sheetIndex, Set<String> columns) throws IOException {
+        ParsedWorkbook workbook = require(fileId);
+        // POI workbooks are not safe for concurrent reads
+        synchronized (workbook) {
+            return workbook.parseSheet(sheetIndex, columns);
+        }
+    }
+
+    public void close(String fileId) {
+        Session closed;
+        synchronized (this) {
+            FileSession file = files.remove(fileId);
+            if (file == null) {
+                return;
+            }
+            Session session = sessions.get(file.contentHash);
+            if (--session.references > 0) {
+                return;
+            }
+            sessions.remove(file.contentHash);
+            sheetTableCache.invalidate(file.contentHash);
+            closed = session;
+        }
+        closeQuietly(closed.workbook);
+    }
+
+    @PreDestroy
+    public void closeAll() {
+        List<String> fileIds;
+        synchronized (this) {
+            fileIds = new ArrayList<>(files.keySet());
+        }
+        for (String fileId : fileIds) {
+            close(fileId);
+        }
+    }
+
+    private ParsedWorkbook register(String fileId, String contentHash, String fileName) {
+        Session session = sessions.get(contentHash);
+        files.put(fileId, new FileSession(contentHash, fileName));
+        session.references++;
+        return session.workbook;
+    }
+
+    private synchronized FileSession requireFile(String fileId) {
+        FileSession file = files.get(fileId);
+        if (file == null) {
+            throw new IllegalArgumentException("No open workbook for file " + fileId);
+        }
+        return file;
+    }
+
+    private synchronized ParsedWorkbook require(String fileId) {
+        return sessions.get(requireFile(fileId).contentHash).workbook;
+    }
+
+    private void closeQuietly(ParsedWorkbook workbook) {
+        synchronized (workbook) {
+            try {
+                workbook.close();
+            } catch (IOException e) {
+                // Nothing useful to do; the workbook is being discarded
+            }
+        }
+    }
+
+    private static class Session {
+        private final ParsedWorkbook workbook;
+        private int references;
+
+        Session(ParsedWorkbook workbook) {
+            this.workbook = workbook;
+        }
+    }
+
+    private static class FileSession {
+        private final String contentHash;
+        private final String fileName;
+
+        FileSession(String contentHash, String fileName) {
+            this.contentHash = contentHash;
+            this.fileName = fileName;
+        }
+    }
+}
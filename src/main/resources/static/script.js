@@ -1,14 +1,19 @@
 let file1Data = null;
 let file2Data = null;
 let currentResultId = null;
-let matchedResults = [];
-let mismatchedResults = [];
+let currentJobId = null;
 let currentTab = 'matched';
+// Only the page on screen is held client-side; the server filters, sorts and pages
+let resultPages = {
+    matched: newResultPage(),
+    mismatched: newResultPage()
+};
 let currentPage = {
     matched: 1,
     mismatched: 1
 };
-const rowsPerPage = 10;
+let rowsPerPage = 25;
+let searchTimers = {};
 
 // File upload handlers
 document.getElementById('file1').addEventListener('change', function(e) {
@@ -32,21 +37,82 @@ document.getElementById('sheet2').addEventListener('change', function(e) {
     resetComparisonData(); // Reset data when sheet changes
 });
 
-async function handleFileUpload(event, fileKey) {
-    const file = event.target.files[0];
-    if (!file) return;
+// Files above the multipart limit are sent as raw chunks that resume after a failure
+const CHUNKED_UPLOAD_THRESHOLD = 8 * 1024 * 1024;
+const UPLOAD_CHUNK_SIZE = 4 * 1024 * 1024;
+const UPLOAD_CHUNK_RETRIES = 5;
 
+async function uploadWhole(file) {
     const formData = new FormData();
     formData.append('file', file);
+    const response = await fetch('/api/upload', {
+        method: 'POST',
+        body: formData
+    });
+    return response.json();
+}
+
+async function uploadInChunks(file) {
+    const params = new URLSearchParams({ fileName: file.name, size: file.size });
+    const started = await (await fetch('/api/uploads?' + params, { method: 'POST' })).json();
+    if (!started.success) {
+        return started;
+    }
+
+    const uploadId = started.uploadId;
+    let received = 0;
+    let failures = 0;
+    while (received < file.size) {
+        updateUploadProgress(received, file.size);
+        try {
+            const response = await fetch('/api/uploads/' + uploadId + '?offset=' + received, {
+                method: 'PUT',
+                headers: { 'Content-Type': 'application/octet-stream' },
+                body: file.slice(received, received + UPLOAD_CHUNK_SIZE)
+            });
+            const chunk = await response.json();
+            if (response.status === 404) {
+                return chunk;
+            }
+            if (!chunk.success && response.status !== 409) {
+                throw new Error(chunk.message);
+            }
+            // On a conflict the server reports where to continue from
+            received = chunk.received;
+            failures = 0;
+        } catch (error) {
+            if (++failures > UPLOAD_CHUNK_RETRIES) {
+                throw error;
+            }
+            // Ask the server how much arrived before the connection dropped
+            await new Promise(resolve => setTimeout(resolve, 1000 * failures));
+            const status = await (await fetch('/api/uploads/' + uploadId)).json();
+            if (!status.success) {
+                return status;
+            }
+            received = status.received;
+        }
+    }
+
+    updateUploadProgress(file.size, file.size);
+    const response = await fetch('/api/uploads/' + uploadId + '/complete', { method: 'POST' });
+    return response.json();
+}
+
+function updateUploadProgress(received, total) {
+    document.getElementById('loading-text').textContent =
+        'Uploading... ' + Math.floor(received * 100 / total) + '%';
+}
+
+async function handleFileUpload(event, fileKey) {
+    const file = event.target.files[0];
+    if (!file) return;
 
     try {
         showLoading(true);
-        const response = await fetch('/api/upload', {
-            method: 'POST',
-            body: formData
-        });
-
-        const result = await response.json();
+        const result = file.size > CHUNKED_UPLOAD_THRESHOLD
+            ? await uploadInChunks(file)
+            : await uploadWhole(file);
 
         if (result.success) {
             console.log('File upload successful:', result);
@@ -125,6 +191,9 @@ function removeFile(fileKey) {
     const columnDropdown = document.getElementById(fileKey === 'file1' ? 'column1' : 'column2');
     const sheetDropdown = document.getElementById(fileKey === 'file1' ? 'sheet1' : 'sheet2');
     columnDropdown.innerHTML = '<option value="">Select a column</option>';
+    document.querySelectorAll(fileKey === 'file1' ? '.key-column1' : '.key-column2').forEach(select => {
+        fillColumnOptions(select, []);
+    });
     sheetDropdown.innerHTML = '<option value="">Select a sheet</option>';
     
     // Hide sheet info
@@ -267,12 +336,11 @@ function showSheetSelection() {
 function checkReadyForComparison() {
     const file1Ready = file1Data && file1Data.selectedSheet;
     const file2Ready = file2Data && file2Data.selectedSheet;
-    const column1Selected = document.getElementById('column1').value;
-    const column2Selected = document.getElementById('column2').value;
+    const columnsSelected = selectedKeyColumns().every(pair => pair.column1 && pair.column2);
     const compareSection = document.getElementById('compare-section');
     const compareBtn = document.getElementById('compare-btn');
     
-    if (file1Ready && file2Ready && column1Selected && column2Selected) {
+    if (file1Ready && file2Ready && columnsSelected) {
         compareSection.classList.remove('hidden');
         compareBtn.disabled = false;
     } else {
@@ -286,6 +354,9 @@ function populateColumnSelection(fileKey, headers) {
     
     const columnSelect = document.getElementById(fileKey === 'file1' ? 'column1' : 'column2');
     columnSelect.innerHTML = '<option value="">Select a column</option>';
+    document.querySelectorAll(fileKey === 'file1' ? '.key-column1' : '.key-column2').forEach(select => {
+        fillColumnOptions(select, headers);
+    });
     
     if (headers && headers.length > 0) {
         headers.forEach(header => {
@@ -341,6 +412,71 @@ function populateColumnDropdowns() {
     }
 }
 
+// Extra key columns: each row pairs a column of File 1 with one of File 2
+function addKeyColumn() {
+    const row = document.createElement('div');
+    row.className = 'column-selection-container key-column-row';
+
+    const column1 = document.createElement('select');
+    column1.className = 'column-select key-column1';
+    fillColumnOptions(column1, file1Data ? file1Data.headers : []);
+
+    const column2 = document.createElement('select');
+    column2.className = 'column-select key-column2';
+    fillColumnOptions(column2, file2Data ? file2Data.headers : []);
+
+    const remove = document.createElement('button');
+    remove.type = 'button';
+    remove.className = 'remove-key-btn';
+    remove.textContent = '×';
+    remove.onclick = function() {
+        row.remove();
+        hideResults();
+        resetComparisonData();
+        checkReadyForComparison();
+    };
+
+    [column1, column2].forEach(select => select.addEventListener('change', function() {
+        hideResults();
+        resetComparisonData();
+        checkReadyForComparison();
+    }));
+
+    row.appendChild(column1);
+    row.appendChild(column2);
+    row.appendChild(remove);
+    document.getElementById('extra-key-columns').appendChild(row);
+    checkReadyForComparison();
+}
+
+// Keeps the current choice if the new headers still contain it
+function fillColumnOptions(select, headers) {
+    const previous = select.value;
+    select.innerHTML = '<option value="">Select a column</option>';
+    (headers || []).forEach(header => {
+        const option = document.createElement('option');
+        option.value = header;
+        option.textContent = header;
+        select.appendChild(option);
+    });
+    select.value = (headers || []).includes(previous) ? previous : '';
+}
+
+// Every selected column pair, starting with the main one
+function selectedKeyColumns() {
+    const pairs = [{
+        column1: document.getElementById('column1').value,
+        column2: document.getElementById('column2').value
+    }];
+    document.querySelectorAll('.key-column-row').forEach(row => {
+        pairs.push({
+            column1: row.querySelector('.key-column1').value,
+            column2: row.querySelector('.key-column2').value
+        });
+    });
+    return pairs;
+}
+
 // Column selection handlers
 document.getElementById('column1').addEventListener('change', function() {
     hideResults(); // Hide results when columns change
@@ -360,10 +496,9 @@ async function compareFiles() {
         return;
     }
 
-    const column1 = document.getElementById('column1').value;
-    const column2 = document.getElementById('column2').value;
+    const keyColumns = selectedKeyColumns();
 
-    if (!column1 || !column2) {
+    if (!keyColumns.every(pair => pair.column1 && pair.column2)) {
         showMessage('Please select columns to compare', 'error');
         return;
     }
@@ -371,13 +506,16 @@ async function compareFiles() {
     const requestData = {
         file1Id: file1Data.fileId,
         file2Id: file2Data.fileId,
-        column1: column1,
-        column2: column2
+        column1: keyColumns[0].column1,
+        column2: keyColumns[0].column2,
+        keyColumns: keyColumns,
+        joinMode: document.getElementById('join-mode').value
     };
 
     try {
         showLoading(true);
-        const response = await fetch('/api/compare', {
+        // Comparisons run as server-side jobs; poll until this one finishes
+        const response = await fetch('/api/jobs', {
             method: 'POST',
             headers: {
                 'Content-Type': 'application/json'
@@ -385,30 +523,73 @@ async function compareFiles() {
             body: JSON.stringify(requestData)
         });
 
-        const result = await response.json();
+        const submitted = await response.json();
+        if (!submitted.success) {
+            showMessage(submitted.message, 'error');
+            return;
+        }
 
-        console.log('Comparison response received:', result);
+        currentJobId = submitted.jobId;
+        const result = await waitForJob(submitted.jobId);
 
-        if (result.success) {
+        if (result.status === 'COMPLETED') {
             currentResultId = result.resultId;
-            console.log('Set currentResultId:', currentResultId);
+            if (result.pageSize) {
+                rowsPerPage = result.pageSize;
+            }
             displayResults(
                 result.matchedCount, 
                 result.mismatchedCount, 
                 result.matchedRows, 
                 result.mismatchedRows
             );
+            showColumnChanges(result.columnChanges);
             showMessage('Comparison completed successfully!', 'success');
+        } else if (result.status === 'CANCELLED') {
+            showMessage('Comparison cancelled', 'error');
         } else {
-            showMessage(result.message, 'error');
+            showMessage(result.message || 'Comparison failed', 'error');
         }
     } catch (error) {
         showMessage('Error during comparison: ' + error.message, 'error');
     } finally {
+        currentJobId = null;
         showLoading(false);
     }
 }
 
+async function waitForJob(jobId) {
+    while (true) {
+        const response = await fetch(`/api/jobs/${jobId}`);
+        const job = await response.json();
+        if (!job.success) {
+            return { status: 'FAILED', message: job.message };
+        }
+        if (job.status !== 'QUEUED' && job.status !== 'RUNNING') {
+            return job;
+        }
+        updateLoadingText(job);
+        await new Promise(resolve => setTimeout(resolve, 500));
+    }
+}
+
+function updateLoadingText(job) {
+    const text = document.getElementById('loading-text');
+    if (job.status === 'QUEUED' || !job.phase) {
+        text.textContent = 'Waiting for a free comparison slot...';
+        return;
+    }
+    const phase = job.phase.charAt(0) + job.phase.slice(1).toLowerCase();
+    text.textContent = `${phase}... ${job.rowsProcessed.toLocaleString()} rows`;
+}
+
+async function cancelComparison() {
+    if (!currentJobId) {
+        return;
+    }
+    await fetch(`/api/jobs/${currentJobId}`, { method: 'DELETE' });
+}
+
 function displayResults(matchedCount, mismatchedCount, matchedRows, mismatchedRows) {
     console.log('displayResults called with:', {
         matchedCount,
@@ -425,15 +606,11 @@ function displayResults(matchedCount, mismatchedCount, matchedRows, mismatchedRo
     document.getElementById('mismatched-count').textContent = mismatchedCount;
     document.getElementById('results').classList.remove('hidden');
 
-    // Store the actual result data for immediate display
-    if (matchedRows) {
-        matchedResults = matchedRows;
-        console.log('Stored matchedResults:', matchedResults.length, 'items');
-    }
-    if (mismatchedRows) {
-        mismatchedResults = mismatchedRows;
-        console.log('Stored mismatchedResults:', mismatchedResults.length, 'items');
-    }
+    // The compare response carries the first page of each side
+    resultPages.matched = newResultPage(matchedRows, matchedCount);
+    resultPages.mismatched = newResultPage(mismatchedRows, mismatchedCount);
+    currentPage.matched = 1;
+    currentPage.mismatched = 1;
 
     // Setup download buttons
     const downloadMatchedBtn = document.getElementById('download-matched');
@@ -452,6 +629,22 @@ function displayResults(matchedCount, mismatchedCount, matchedRows, mismatchedRo
     console.log('Results display completed');
 }
 
+// Row diffs report how many matched rows changed in each compared column
+function showColumnChanges(columnChanges) {
+    const summary = document.getElementById('column-changes');
+    summary.innerHTML = '';
+    if (!columnChanges) {
+        summary.classList.add('hidden');
+        return;
+    }
+    Object.entries(columnChanges).forEach(([column, changed]) => {
+        const item = document.createElement('li');
+        item.textContent = column + ': ' + changed + ' changed';
+        summary.appendChild(item);
+    });
+    summary.classList.remove('hidden');
+}
+
 function downloadResult(type) {
     console.log('Download clicked - currentResultId:', currentResultId);
     
@@ -509,26 +702,41 @@ function hideResults() {
     if (tabularResults) {
         tabularResults.classList.add('hidden');
     }
-    
+
+    const columnChanges = document.getElementById('column-changes');
+    if (columnChanges) {
+        columnChanges.classList.add('hidden');
+    }
+
     // Hide loading indicator
     showLoading(false);
     
     // Don't reset comparison data here - only hide UI elements
     // currentResultId = null;
-    // matchedResults = [];
-    // mismatchedResults = [];
 }
 
 function resetComparisonData() {
     // Reset comparison data when files are changed or removed
     currentResultId = null;
-    matchedResults = [];
-    mismatchedResults = [];
+    resultPages.matched = newResultPage();
+    resultPages.mismatched = newResultPage();
+}
+
+function newResultPage(rows, total) {
+    return {
+        rows: rows || [],
+        headers: rows && rows.length > 0 ? Object.keys(rows[0]) : [],
+        total: total || 0,
+        filter: '',
+        sort: null,
+        order: 'asc'
+    };
 }
 
 function showLoading(show) {
     const loading = document.getElementById('loading');
     if (show) {
+        document.getElementById('loading-text').textContent = 'Processing comparison...';
         loading.classList.remove('hidden');
     } else {
         loading.classList.add('hidden');
@@ -536,69 +744,57 @@ function showLoading(show) {
 }
 
 // Tabular Results Functions
-async function fetchAndDisplayResults(type) {
+async function fetchResultPage(type, page) {
     if (!currentResultId) {
         showMessage('No comparison result available', 'error');
         return;
     }
 
+    const state = resultPages[type];
+    const params = new URLSearchParams({
+        offset: (page - 1) * rowsPerPage,
+        limit: rowsPerPage,
+        order: state.order
+    });
+    if (state.sort) {
+        params.set('sort', state.sort);
+    }
+    if (state.filter) {
+        params.set('filter', state.filter);
+    }
+
     try {
-        showLoading(true);
-        // Use simple POST endpoint to avoid static resource conflicts
-        const response = await fetch('/api/get-results', {
-            method: 'POST',
-            headers: {
-                'Content-Type': 'application/json'
-            },
-            body: JSON.stringify({
-                resultId: currentResultId,
-                type: type
-            })
-        });
-        
+        const response = await fetch(`/api/results/${currentResultId}/${type}?${params}`);
         const result = await response.json();
 
         if (result.success) {
-            if (type === 'matched') {
-                matchedResults = result.rows || [];
-            } else {
-                mismatchedResults = result.rows || [];
-            }
-            
-            showTabularResults(type);
+            state.rows = result.rows || [];
+            state.headers = result.headers || [];
+            state.total = result.totalRows;
+            currentPage[type] = page;
+            renderTable(type);
+            renderPagination(type);
         } else {
             showMessage(result.message, 'error');
         }
     } catch (error) {
         showMessage('Error fetching results: ' + error.message, 'error');
         console.error('Fetch error:', error);
-    } finally {
-        showLoading(false);
     }
 }
 
 function showTabularResults(type) {
-    console.log('showTabularResults called for type:', type);
-    console.log('Current data:', {
-        matchedResults: matchedResults ? matchedResults.length : 'null',
-        mismatchedResults: mismatchedResults ? mismatchedResults.length : 'null'
-    });
-    
     const tabularResults = document.getElementById('tabular-results');
     tabularResults.classList.remove('hidden');
     
     // Set the active tab to the requested type
     currentTab = type;
     showTab(type);
-    renderTable(type);
-    renderPagination(type);
 }
 
 function showTab(type) {
     currentTab = type;
     
-    console.log('showTab called for type:', type);
-    
     // Update tab buttons
     document.querySelectorAll('.tab-btn').forEach(btn => {
         btn.classList.remove('active');
@@ -615,36 +811,29 @@ function showTab(type) {
 }
 
 function renderTable(type) {
-    const data = type === 'matched' ? matchedResults : mismatchedResults;
+    const state = resultPages[type];
+    const data = state.rows;
     const thead = document.getElementById(`${type}-thead`);
     const tbody = document.getElementById(`${type}-tbody`);
     
-    console.log('renderTable called for type:', type);
-    console.log('Data available:', data ? data.length : 'null');
-    
     if (!data || data.length === 0) {
-        console.log('No data to render - showing "No results found"');
         thead.innerHTML = '';
-        tbody.innerHTML = '<tr><td colspan="100%" class="no-results">No results found</td></tr>';
+        const message = state.filter ? 'No results found matching your search' : 'No results found';
+        tbody.innerHTML = `<tr><td colspan="100%" class="no-results">${message}</td></tr>`;
         return;
     }
     
-    console.log('Rendering table with', data.length, 'rows');
-    console.log('Sample data:', data[0]);
-    
-    // Create headers
-    const headers = Object.keys(data[0]);
-    thead.innerHTML = headers.map(header => `<th>${header}</th>`).join('');
-    
-    // Create rows with pagination
-    const page = currentPage[type];
-    const startIndex = (page - 1) * rowsPerPage;
-    const endIndex = startIndex + rowsPerPage;
-    const pageData = data.slice(startIndex, endIndex);
-    
-    console.log('Rendering page', page, 'rows', startIndex, 'to', endIndex, 'showing', pageData.length, 'rows');
+    // Create headers; clicking one sorts the whole result on the server
+    const headers = state.headers.length > 0 ? state.headers : Object.keys(data[0]);
+    thead.innerHTML = headers.map(header => {
+        const arrow = state.sort === header ? (state.order === 'asc' ? ' &#9650;' : ' &#9660;') : '';
+        return `<th class="sortable" data-column="${header}">${header}${arrow}</th>`;
+    }).join('');
+    thead.querySelectorAll('th').forEach(th => {
+        th.onclick = () => sortResults(type, th.dataset.column);
+    });
     
-    tbody.innerHTML = pageData.map(row => {
+    tbody.innerHTML = data.map(row => {
         const cells = headers.map(header => {
             const value = row[header];
             let cellContent = value;
@@ -666,22 +855,23 @@ function getStatusClass(status) {
     switch (status) {
         case 'MATCHED': return 'status-match';
         case 'MISMATCHED': return 'status-mismatch';
+        case 'CHANGED': return 'status-mismatch';
         case 'ONLY IN FILE1': return 'status-only-file1';
         case 'ONLY IN FILE2': return 'status-only-file2';
-        default: return '';
+        default: return status && status.startsWith('MISSING FROM') ? 'status-mismatch' : '';
     }
 }
 
 function renderPagination(type) {
-    const data = type === 'matched' ? matchedResults : mismatchedResults;
+    const state = resultPages[type];
     const pagination = document.getElementById(`${type}-pagination`);
     
-    if (!data || data.length === 0) {
+    if (!state.total) {
         pagination.innerHTML = '';
         return;
     }
     
-    const totalPages = Math.ceil(data.length / rowsPerPage);
+    const totalPages = Math.ceil(state.total / rowsPerPage);
     const currentPageNum = currentPage[type];
     
     let paginationHTML = '';
@@ -689,12 +879,16 @@ function renderPagination(type) {
     // Previous button
     paginationHTML += `<button ${currentPageNum === 1 ? 'disabled' : ''} onclick="changePage('${type}', ${currentPageNum - 1})">Previous</button>`;
     
-    // Page numbers
+    // Page numbers around the current page only
     for (let i = 1; i <= totalPages; i++) {
         if (i === 1 || i === totalPages || (i >= currentPageNum - 2 && i <= currentPageNum + 2)) {
             paginationHTML += `<button class="${i === currentPageNum ? 'active' : ''}" onclick="changePage('${type}', ${i})">${i}</button>`;
         } else if (i === currentPageNum - 3 || i === currentPageNum + 3) {
             paginationHTML += '<span>...</span>';
+        } else if (i < currentPageNum - 3) {
+            i = currentPageNum - 4;
+        } else if (i > currentPageNum + 3) {
+            i = totalPages - 1;
         }
     }
     
@@ -705,28 +899,30 @@ function renderPagination(type) {
 }
 
 function changePage(type, page) {
-    const data = type === 'matched' ? matchedResults : mismatchedResults;
-    const totalPages = Math.ceil(data.length / rowsPerPage);
+    const totalPages = Math.ceil(resultPages[type].total / rowsPerPage);
     
     if (page < 1 || page > totalPages) return;
     
-    currentPage[type] = page;
-    renderTable(type);
-    renderPagination(type);
+    fetchResultPage(type, page);
+}
+
+function sortResults(type, column) {
+    const state = resultPages[type];
+    if (state.sort === column) {
+        state.order = state.order === 'asc' ? 'desc' : 'asc';
+    } else {
+        state.sort = column;
+        state.order = 'asc';
+    }
+    fetchResultPage(type, 1);
 }
 
 function setupSearchAndExport() {
-    // Setup search for matched results
-    const matchedSearch = document.getElementById('matched-search');
-    matchedSearch.addEventListener('input', (e) => {
-        filterResults('matched', e.target.value);
-    });
-    
-    // Setup search for mismatched results
-    const mismatchedSearch = document.getElementById('mismatched-search');
-    mismatchedSearch.addEventListener('input', (e) => {
-        filterResults('mismatched', e.target.value);
-    });
+    // Inputs are reused across comparisons, so handlers are assigned rather than added
+    document.getElementById('matched-search').value = '';
+    document.getElementById('matched-search').oninput = (e) => filterResults('matched', e.target.value);
+    document.getElementById('mismatched-search').value = '';
+    document.getElementById('mismatched-search').oninput = (e) => filterResults('mismatched', e.target.value);
     
     // Setup export buttons
     document.getElementById('export-matched-csv').onclick = () => exportToCSV('matched');
@@ -734,80 +930,39 @@ function setupSearchAndExport() {
 }
 
 function filterResults(type, searchTerm) {
-    const data = type === 'matched' ? matchedResults : mismatchedResults;
-    const tbody = document.getElementById(`${type}-tbody`);
-    
-    if (!searchTerm) {
-        renderTable(type);
-        return;
-    }
-    
-    const filteredData = data.filter(row => {
-        return Object.values(row).some(value => 
-            value && value.toString().toLowerCase().includes(searchTerm.toLowerCase())
-        );
-    });
-    
-    if (filteredData.length === 0) {
-        tbody.innerHTML = '<tr><td colspan="100%" class="no-results">No results found matching your search</td></tr>';
-        document.getElementById(`${type}-pagination`).innerHTML = '';
-        return;
-    }
-    
-    // Render filtered results
-    const headers = Object.keys(filteredData[0]);
-    const thead = document.getElementById(`${type}-thead`);
-    thead.innerHTML = headers.map(header => `<th>${header}</th>`).join('');
-    
-    tbody.innerHTML = filteredData.map(row => {
-        const cells = headers.map(header => {
-            const value = row[header];
-            let cellContent = value;
-            
-            if (header === 'Status') {
-                const statusClass = getStatusClass(value);
-                cellContent = `<span class="status-badge ${statusClass}">${value}</span>`;
-            }
-            
-            return `<td>${cellContent}</td>`;
-        }).join('');
-        
-        return `<tr>${cells}</tr>`;
-    }).join('');
-    
-    document.getElementById(`${type}-pagination`).innerHTML = '';
+    // Wait for a pause in typing before asking the server
+    clearTimeout(searchTimers[type]);
+    searchTimers[type] = setTimeout(() => {
+        resultPages[type].filter = searchTerm.trim();
+        fetchResultPage(type, 1);
+    }, 300);
 }
 
 function exportToCSV(type) {
-    const data = type === 'matched' ? matchedResults : mismatchedResults;
+    const state = resultPages[type];
     
-    if (!data || data.length === 0) {
+    if (!currentResultId || !state.total) {
         showMessage('No data to export', 'error');
         return;
     }
     
-    const headers = Object.keys(data[0]);
-    const csvContent = [
-        headers.join(','),
-        ...data.map(row => 
-            headers.map(header => {
-                const value = row[header] || '';
-                return `"${value.toString().replace(/"/g, '""')}"`;
-            }).join(',')
-        )
-    ].join('\n');
+    // The server writes the full filtered and sorted result, not just this page
+    const params = new URLSearchParams({ order: state.order });
+    if (state.sort) {
+        params.set('sort', state.sort);
+    }
+    if (state.filter) {
+        params.set('filter', state.filter);
+    }
     
-    const blob = new Blob([csvContent], { type: 'text/csv' });
-    const url = window.URL.createObjectURL(blob);
     const link = document.createElement('a');
-    link.href = url;
+    link.href = `/api/results/${currentResultId}/${type}/csv?${params}`;
     link.download = `${type}_results.csv`;
     document.body.appendChild(link);
     link.click();
     document.body.removeChild(link);
-    window.URL.revokeObjectURL(url);
     
-    showMessage(`Exported ${data.length} ${type} results to CSV`, 'success');
+    showMessage(`Exporting ${state.total} ${type} results to CSV`, 'success');
 }
 
 function showMessage(message, type) {